@@ -0,0 +1,196 @@
+package insomnia.automaton.algorithm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import insomnia.automaton.IPAutomaton;
+import insomnia.automaton.edge.EdgeEpsilon;
+import insomnia.automaton.edge.IEdge;
+import insomnia.automaton.state.IState;
+
+/**
+ * Non deterministic validation where the sets of current states are bitsets.
+ * The epsilon closures are computed once at construction, a run only swaps two
+ * per thread bitsets and allocates nothing.
+ * The validation is bound to the automaton whose initial state is given at
+ * construction.
+ */
+public class BitSetPValidation<E> implements IPValidation<E>
+{
+	private final int words;
+	private final long[] initialClosure;
+	private final long[] finals;
+
+	// Transitions non epsilon de chaque état, avec la fermeture de leur cible
+	private final IEdge<E>[][] edges;
+	private final long[][][] targetClosures;
+
+	private final ThreadLocal<long[][]> buffers;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BitSetPValidation(IState<E> initialState)
+	{
+		// Indexation dense des états accessibles
+		IdentityHashMap<IState<E>, Integer> index = new IdentityHashMap<>();
+		List<IState<E>> states = new ArrayList<>();
+		ArrayDeque<IState<E>> toVisit = new ArrayDeque<>();
+		index.put(initialState, 0);
+		states.add(initialState);
+		toVisit.add(initialState);
+		while(!toVisit.isEmpty())
+		{
+			for(IEdge<E> edge : toVisit.poll())
+			{
+				IState<E> child = edge.getChild();
+				if(!index.containsKey(child))
+				{
+					index.put(child, states.size());
+					states.add(child);
+					toVisit.add(child);
+				}
+			}
+		}
+
+		int n = states.size();
+		words = (n + 63) >>> 6;
+		finals = new long[words];
+		long[][] closures = new long[n][];
+		for(int i = 0; i < n; i++)
+		{
+			if(states.get(i).isFinal())
+				finals[i >>> 6] |= 1L << i;
+			closures[i] = epsilonClosure(states, index, i);
+		}
+		initialClosure = closures[0];
+
+		edges = new IEdge[n][];
+		targetClosures = new long[n][][];
+		for(int i = 0; i < n; i++)
+		{
+			List<IEdge<E>> stateEdges = new ArrayList<>();
+			for(IEdge<E> edge : states.get(i))
+			{
+				if(!(edge instanceof EdgeEpsilon))
+					stateEdges.add(edge);
+			}
+			edges[i] = stateEdges.toArray(new IEdge[stateEdges.size()]);
+			targetClosures[i] = new long[edges[i].length][];
+			for(int j = 0; j < edges[i].length; j++)
+				targetClosures[i][j] = closures[index.get(edges[i][j].getChild())];
+		}
+
+		buffers = ThreadLocal.withInitial(() -> new long[][] { new long[words], new long[words] });
+	}
+
+	private long[] epsilonClosure(List<IState<E>> states, IdentityHashMap<IState<E>, Integer> index, int state)
+	{
+		long[] closure = new long[words];
+		ArrayDeque<Integer> stack = new ArrayDeque<>();
+		closure[state >>> 6] |= 1L << state;
+		stack.push(state);
+		while(!stack.isEmpty())
+		{
+			for(IEdge<E> edge : states.get(stack.pop()))
+			{
+				if(!(edge instanceof EdgeEpsilon))
+					continue;
+				int child = index.get(edge.getChild());
+				if((closure[child >>> 6] & (1L << child)) == 0)
+				{
+					closure[child >>> 6] |= 1L << child;
+					stack.push(child);
+				}
+			}
+		}
+		return closure;
+	}
+
+	@Override
+	public boolean test(IPAutomaton<E> automaton, List<E> elements)
+	{
+		return simulate(initialClosure, elements, 0);
+	}
+
+	/**
+	 * Run the simulation from the set of states from on elements[index..]
+	 */
+	protected boolean simulate(long[] from, List<E> elements, int index)
+	{
+		long[][] buffer = buffers.get();
+		long[] current = buffer[0];
+		long[] next = buffer[1];
+		System.arraycopy(from, 0, current, 0, words);
+
+		int n = elements.size();
+		for(; index < n; index++)
+		{
+			if(!step(current, elements.get(index), next))
+				return false;
+
+			long[] temp = current;
+			current = next;
+			next = temp;
+		}
+		return isFinal(current);
+	}
+
+	/**
+	 * Compute in next the states reached from current by elt
+	 * 
+	 * @return false if next is empty
+	 */
+	protected boolean step(long[] current, E elt, long[] next)
+	{
+		Arrays.fill(next, 0L);
+		boolean empty = true;
+
+		// Parcours des bits des états courants
+		for(int w = 0; w < words; w++)
+		{
+			long bits = current[w];
+			while(bits != 0)
+			{
+				int state = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				IEdge<E>[] stateEdges = edges[state];
+				for(int e = 0; e < stateEdges.length; e++)
+				{
+					if(!stateEdges[e].isValid(elt))
+						continue;
+					long[] closure = targetClosures[state][e];
+					for(int i = 0; i < words; i++)
+						next[i] |= closure[i];
+					empty = false;
+				}
+			}
+		}
+		return !empty;
+	}
+
+	/**
+	 * @return true if one of the states of the set is final
+	 */
+	protected boolean isFinal(long[] set)
+	{
+		for(int w = 0; w < words; w++)
+		{
+			if((set[w] & finals[w]) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	protected long[] getInitialClosure()
+	{
+		return initialClosure;
+	}
+
+	protected int getWords()
+	{
+		return words;
+	}
+}
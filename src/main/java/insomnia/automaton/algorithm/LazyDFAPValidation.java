@@ -0,0 +1,208 @@
+package insomnia.automaton.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import insomnia.automaton.IPAutomaton;
+import insomnia.automaton.state.IState;
+
+/**
+ * Validation building the states of the deterministic automaton on the fly.
+ * A deterministic state is a set of states of the automaton, its transitions
+ * are cached per element the first time they are taken. The cache is bounded :
+ * when it is full it is flushed, and a run that lost its cache ends with the
+ * bitset simulation. If the cache is flushed too often (less than
+ * THRASH_FACTOR steps per cached state between two flushes, THRASH_LIMIT times
+ * in a row), the deterministic cache is given up and every run uses the
+ * simulation.
+ */
+public class LazyDFAPValidation<E> extends BitSetPValidation<E>
+{
+	public static final int DEFAULT_MAX_STATES = 1024;
+	public static final int DEFAULT_MAX_TRANSITIONS = 16384;
+
+	private static final int THRASH_FACTOR = 10;
+	private static final int THRASH_LIMIT = 3;
+
+	private final class DState
+	{
+		final long[] set;
+		final int hash;
+		final boolean isFinal;
+		final ConcurrentHashMap<E, DState> transitions;
+
+		DState(long[] set)
+		{
+			this.set = set;
+			hash = Arrays.hashCode(set);
+			isFinal = LazyDFAPValidation.this.isFinal(set);
+			transitions = new ConcurrentHashMap<>();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof LazyDFAPValidation.DState))
+				return false;
+			return Arrays.equals(set, ((LazyDFAPValidation<?>.DState) o).set);
+		}
+	}
+
+	private final class Cache
+	{
+		final ConcurrentHashMap<DState, DState> states;
+		final DState initial;
+		final DState dead;
+		final AtomicInteger transitions;
+		final LongAdder steps;
+
+		Cache()
+		{
+			states = new ConcurrentHashMap<>();
+			initial = new DState(getInitialClosure().clone());
+			dead = new DState(new long[getWords()]);
+			states.put(initial, initial);
+			transitions = new AtomicInteger();
+			steps = new LongAdder();
+		}
+	}
+
+	private final int maxStates;
+	private final int maxTransitions;
+	private final ThreadLocal<long[]> scratch;
+
+	private volatile Cache cache;
+	private volatile boolean fallback;
+	private int thrashCount;
+	private final AtomicInteger flushCount;
+
+	public LazyDFAPValidation(IState<E> initialState)
+	{
+		this(initialState, DEFAULT_MAX_STATES, DEFAULT_MAX_TRANSITIONS);
+	}
+
+	public LazyDFAPValidation(IState<E> initialState, int maxStates, int maxTransitions)
+	{
+		super(initialState);
+		this.maxStates = maxStates;
+		this.maxTransitions = maxTransitions;
+		scratch = ThreadLocal.withInitial(() -> new long[getWords()]);
+		cache = new Cache();
+		fallback = false;
+		thrashCount = 0;
+		flushCount = new AtomicInteger();
+	}
+
+	@Override
+	public boolean test(IPAutomaton<E> automaton, List<E> elements)
+	{
+		if(fallback)
+			return super.test(automaton, elements);
+
+		Cache c = cache;
+		DState state = c.initial;
+		int n = elements.size();
+		for(int i = 0; i < n; i++)
+		{
+			E elt = elements.get(i);
+			DState next = state.transitions.get(elt);
+			if(next == null)
+			{
+				next = computeNext(c, state, elt);
+				// Le cache a été vidé, on termine par simulation
+				if(next == null)
+				{
+					c.steps.add(i);
+					return simulate(state.set, elements, i);
+				}
+			}
+			if(next == c.dead)
+			{
+				c.steps.add(i + 1);
+				return false;
+			}
+			state = next;
+		}
+		c.steps.add(n);
+		return state.isFinal;
+	}
+
+	private DState computeNext(Cache c, DState state, E elt)
+	{
+		if(c.transitions.incrementAndGet() > maxTransitions)
+		{
+			flush(c);
+			return null;
+		}
+
+		long[] set = scratch.get();
+		DState next;
+		if(!step(state.set, elt, set))
+			next = c.dead;
+		else
+		{
+			next = new DState(set.clone());
+			DState old = c.states.get(next);
+			if(old != null)
+				next = old;
+			else
+			{
+				if(c.states.size() >= maxStates)
+				{
+					flush(c);
+					return null;
+				}
+				old = c.states.putIfAbsent(next, next);
+				if(old != null)
+					next = old;
+			}
+		}
+		state.transitions.put(elt, next);
+		return next;
+	}
+
+	private synchronized void flush(Cache full)
+	{
+		// Un autre thread a déjà vidé ce cache
+		if(cache != full)
+			return;
+
+		if(full.steps.sum() < (long) THRASH_FACTOR * full.states.size())
+		{
+			if(++thrashCount >= THRASH_LIMIT)
+				fallback = true;
+		}
+		else
+			thrashCount = 0;
+
+		flushCount.incrementAndGet();
+		cache = new Cache();
+	}
+
+	/**
+	 * @return true if the deterministic cache has been given up
+	 */
+	public boolean isFallback()
+	{
+		return fallback;
+	}
+
+	public int getFlushCount()
+	{
+		return flushCount.get();
+	}
+
+	public int getCachedStates()
+	{
+		return cache.states.size();
+	}
+}
@@ -22,6 +22,10 @@ public class NonDeterministicPValidation<E> implements IPValidation<E>
 		int index = 0;
 		int n = elements.size();
 
+		// Chemin vide : l'état initial doit atteindre un état final par epsilon
+		if(n == 0)
+			return nextStates.stream().anyMatch(IState::isFinal);
+
 		// Tant qu'il y aura des états à parcourir
 		while(!nextStates.isEmpty())
 		{
@@ -6,25 +6,65 @@ import insomnia.automaton.state.IState;
 
 /**
  * Edge for regex
+ * The length, literal prefix and suffix of the regex are checked before the
+ * regex, and a regex of a few literals is a set lookup. The results of the
+ * regex can be kept in a {@link MatchCache}.
  */
 public class EdgeRegex extends Edge
 {
 	String regex;
 	Pattern pattern;
+	RegexPrefilter prefilter;
+	MatchCache cache;
 
 	public EdgeRegex(IState<String> parent, IState<String> child, String regex)
+	{
+		this(parent, child, regex, 0);
+	}
+
+	/**
+	 * @param cacheCapacity maximum number of cached results, 0 for no cache
+	 */
+	public EdgeRegex(IState<String> parent, IState<String> child, String regex, int cacheCapacity)
 	{
 		super(parent, child);
 		this.regex = regex;
 		pattern = Pattern.compile(regex);
+		prefilter = RegexPrefilter.analyze(regex);
+		// Inutile si le filtre suffit
+		cache = cacheCapacity > 0 && !prefilter.isExact() ? new MatchCache(cacheCapacity) : null;
 	}
 
 	@Override
 	public boolean isValid(String element)
+	{
+		if(!prefilter.mayMatch(element))
+			return false;
+		if(prefilter.isExact())
+			return true;
+		if(cache != null)
+			return cache.test(element, this::matches);
+		return matches(element);
+	}
+
+	private boolean matches(String element)
 	{
 		return pattern.matcher(element).matches();
 	}
 
+	public RegexPrefilter getPrefilter()
+	{
+		return prefilter;
+	}
+
+	/**
+	 * @return the cache of the results or null
+	 */
+	public MatchCache getMatchCache()
+	{
+		return cache;
+	}
+
 	@Override
 	public String toString()
 	{
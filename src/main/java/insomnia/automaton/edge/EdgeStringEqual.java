@@ -1,18 +1,32 @@
 package insomnia.automaton.edge;
 
 import insomnia.automaton.state.IState;
+import insomnia.symbol.SymbolTable;
 
 /**
  * Edge for words
+ * If the word is interned in a {@link SymbolTable}, an element given with its
+ * symbol in the same table is compared by symbol.
  */
 public class EdgeStringEqual extends Edge
 {
 	String strCmp;
+	int symbol;
 
 	public EdgeStringEqual(IState<String> parent, IState<String> child, String strCmp)
+	{
+		this(parent, child, strCmp, SymbolTable.NO_SYMBOL);
+	}
+
+	/**
+	 * @param strCmp canonical instance of the word in its table
+	 * @param symbol symbol of the word
+	 */
+	public EdgeStringEqual(IState<String> parent, IState<String> child, String strCmp, int symbol)
 	{
 		super(parent, child);
 		this.strCmp = strCmp;
+		this.symbol = symbol;
 	}
 
 	public String getWord()
@@ -20,12 +34,31 @@ public class EdgeStringEqual extends Edge
 		return strCmp;
 	}
 
+	/**
+	 * @return the symbol of the word or {@link SymbolTable#NO_SYMBOL}
+	 */
+	public int getSymbol()
+	{
+		return symbol;
+	}
+
 	@Override
 	public boolean isValid(String element)
 	{
 		return strCmp.equals(element);
 	}
 
+	/**
+	 * @param symbol symbol of the element in the table of the word or
+	 *               {@link SymbolTable#NO_SYMBOL}
+	 */
+	public boolean isValid(String element, int symbol)
+	{
+		if(this.symbol != SymbolTable.NO_SYMBOL && symbol != SymbolTable.NO_SYMBOL)
+			return this.symbol == symbol;
+		return strCmp.equals(element);
+	}
+
 	@Override
 	public String toString()
 	{
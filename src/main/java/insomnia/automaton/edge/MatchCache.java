@@ -0,0 +1,113 @@
+package insomnia.automaton.edge;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of the results of a regex on the elements, shared between
+ * threads. The keys of the documents come back a lot, a cached key costs a
+ * hash lookup (the hash of a String is computed once, and the comparison of an
+ * interned key is an identity test). When the cache is full it is flushed.
+ */
+public final class MatchCache
+{
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private final ConcurrentHashMap<String, Boolean> results;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder flushes;
+
+	public MatchCache()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public MatchCache(int capacity)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		this.capacity = capacity;
+		results = new ConcurrentHashMap<>();
+		hits = new LongAdder();
+		misses = new LongAdder();
+		flushes = new LongAdder();
+	}
+
+	/**
+	 * @return the cached result of the element, computed by match the first time
+	 */
+	public boolean test(String element, Predicate<String> match)
+	{
+		Boolean result = results.get(element);
+		if(result != null)
+		{
+			hits.increment();
+			return result;
+		}
+		misses.increment();
+		boolean matches = match.test(element);
+
+		// Course bénigne : le cache peut dépasser la capacité de quelques entrées
+		if(results.size() >= capacity)
+		{
+			results.clear();
+			flushes.increment();
+		}
+		results.put(element, matches);
+		return matches;
+	}
+
+	public int size()
+	{
+		return results.size();
+	}
+
+	public void clear()
+	{
+		results.clear();
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getFlushCount()
+	{
+		return flushes.sum();
+	}
+
+	/**
+	 * @return the ratio of the lookups answered by the cache, 0 if there was none
+	 */
+	public double getHitRate()
+	{
+		long h = getHits();
+		long total = h + getMisses();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+		s.append("MatchCache ").append(size()).append("/").append(capacity);
+		s.append(", hits ").append(getHits()).append(", misses ").append(getMisses());
+		s.append(", flushes ").append(getFlushCount());
+		return s.toString();
+	}
+}
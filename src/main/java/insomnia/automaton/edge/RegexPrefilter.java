@@ -0,0 +1,567 @@
+package insomnia.automaton.edge;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cheap necessary conditions of a java regex, computed once from its source :
+ * the length range of the matched strings, a literal prefix and suffix, and the
+ * set of the matched strings when it is small. A string that fails them can't
+ * match, the others still need the regex unless the set is exact.
+ * The analysis only over-approximates the language ; a regex using something
+ * it doesn't understand (flags, quoting...) gets a filter accepting everything.
+ */
+public final class RegexPrefilter
+{
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private static final int MAX_LITERALS = 32;
+
+	private static final RegexPrefilter ACCEPT_ALL = new RegexPrefilter(0, UNBOUNDED, "", "", null, false);
+
+	private final int minLength;
+	private final int maxLength;
+	private final String prefix;
+	private final String suffix;
+	private final Set<String> literals;
+	private final boolean exact;
+
+	private RegexPrefilter(int minLength, int maxLength, String prefix, String suffix, Set<String> literals,
+			boolean exact)
+	{
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.literals = literals;
+		this.exact = exact;
+	}
+
+	/**
+	 * Analysis of a language : over-approximation of the strings matched by a
+	 * part of the regex
+	 */
+	private static final class Info
+	{
+		int min;
+		int max;
+		String prefix;
+		String suffix;
+		// null si trop grand ou inconnu
+		Set<String> literals;
+		// literals est exactement le langage
+		boolean exact;
+
+		static Info literal(String s)
+		{
+			Info info = new Info();
+			info.min = info.max = s.length();
+			info.prefix = info.suffix = s;
+			info.literals = Collections.singleton(s);
+			info.exact = true;
+			return info;
+		}
+
+		/**
+		 * @param max maximum length, a code point may be two chars
+		 */
+		static Info any(int min, int max)
+		{
+			Info info = new Info();
+			info.min = min;
+			info.max = max;
+			info.prefix = info.suffix = "";
+			info.literals = null;
+			info.exact = false;
+			return info;
+		}
+
+		/**
+		 * Zero width assertion : only restricts the language
+		 */
+		static Info assertion()
+		{
+			Info info = literal("");
+			info.exact = false;
+			return info;
+		}
+	}
+
+	private static final class UnsupportedException extends Exception
+	{
+		private static final long serialVersionUID = -2290431693616005302L;
+	}
+
+	/**
+	 * Recursive descent over the source of the regex
+	 */
+	private static final class Analyzer
+	{
+		private final String regex;
+		private int pos;
+
+		Analyzer(String regex)
+		{
+			this.regex = regex;
+			pos = 0;
+		}
+
+		Info analyze() throws UnsupportedException
+		{
+			Info info = alternation();
+			if(pos != regex.length())
+				throw new UnsupportedException();
+			return info;
+		}
+
+		private boolean more()
+		{
+			return pos < regex.length();
+		}
+
+		private char peek()
+		{
+			return regex.charAt(pos);
+		}
+
+		private Info alternation() throws UnsupportedException
+		{
+			Info info = sequence();
+			while(more() && peek() == '|')
+			{
+				pos++;
+				info = union(info, sequence());
+			}
+			return info;
+		}
+
+		private Info sequence() throws UnsupportedException
+		{
+			Info info = Info.literal("");
+			while(more() && peek() != '|' && peek() != ')')
+				info = concat(info, quantified(atom()));
+			return info;
+		}
+
+		private Info atom() throws UnsupportedException
+		{
+			char c = regex.charAt(pos++);
+			switch(c)
+			{
+			case '(':
+				return group();
+			case '[':
+				skipClass();
+				return Info.any(1, 2);
+			case '.':
+				return Info.any(1, 2);
+			case '^':
+			case '$':
+				return Info.assertion();
+			case '\\':
+				return escape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+			case ')':
+				throw new UnsupportedException();
+			default:
+				// Un quantificateur porte sur le code point entier
+				if(Character.isHighSurrogate(c) && more() && Character.isLowSurrogate(peek()))
+					return Info.literal(regex.substring(pos - 1, ++pos));
+				return Info.literal(String.valueOf(c));
+			}
+		}
+
+		private Info group() throws UnsupportedException
+		{
+			boolean assertion = false;
+			boolean restricted = false;
+			if(more() && peek() == '?')
+			{
+				pos++;
+				if(!more())
+					throw new UnsupportedException();
+				char c = regex.charAt(pos++);
+				if(c == '=' || c == '!')
+					assertion = true;
+				else if(c == '>')
+					restricted = true;
+				else if(c == '<')
+				{
+					if(more() && (peek() == '=' || peek() == '!'))
+					{
+						pos++;
+						assertion = true;
+					}
+					else
+					{
+						// Groupe nommé
+						int end = regex.indexOf('>', pos);
+						if(end < 0)
+							throw new UnsupportedException();
+						pos = end + 1;
+					}
+				}
+				else if(c != ':')
+					// Options comme (?i) : le langage n'est plus littéral
+					throw new UnsupportedException();
+			}
+
+			Info info = alternation();
+			if(!more() || peek() != ')')
+				throw new UnsupportedException();
+			pos++;
+
+			if(assertion)
+				return Info.assertion();
+			if(restricted)
+				info.exact = false;
+			return info;
+		}
+
+		private void skipClass() throws UnsupportedException
+		{
+			int depth = 1;
+			// Un ']' en tête de classe est littéral
+			if(more() && peek() == '^')
+				pos++;
+			if(more() && peek() == ']')
+				pos++;
+			while(more())
+			{
+				char c = regex.charAt(pos++);
+				if(c == '\\')
+				{
+					if(!more())
+						throw new UnsupportedException();
+					char e = regex.charAt(pos++);
+					if(e == 'Q')
+						throw new UnsupportedException();
+				}
+				else if(c == '[')
+					depth++;
+				else if(c == ']' && --depth == 0)
+					return;
+			}
+			throw new UnsupportedException();
+		}
+
+		private Info escape() throws UnsupportedException
+		{
+			if(!more())
+				throw new UnsupportedException();
+			char c = regex.charAt(pos++);
+			switch(c)
+			{
+			case 't':
+				return Info.literal("\t");
+			case 'n':
+				return Info.literal("\n");
+			case 'r':
+				return Info.literal("\r");
+			case 'f':
+				return Info.literal("\f");
+			case 'a':
+				return Info.literal("\u0007");
+			case 'e':
+				return Info.literal("\u001B");
+			case 'd':
+			case 'D':
+			case 's':
+			case 'S':
+			case 'w':
+			case 'W':
+			case 'h':
+			case 'H':
+			case 'v':
+			case 'V':
+				return Info.any(1, 2);
+			case 'p':
+			case 'P':
+				if(more() && peek() == '{')
+				{
+					int end = regex.indexOf('}', pos);
+					if(end < 0)
+						throw new UnsupportedException();
+					pos = end + 1;
+				}
+				else if(more())
+					pos++;
+				return Info.any(1, 2);
+			case 'b':
+			case 'B':
+			case 'A':
+			case 'z':
+			case 'Z':
+			case 'G':
+				return Info.assertion();
+			default:
+				if(Character.isDigit(c))
+				{
+					// Référence arrière
+					while(more() && Character.isDigit(peek()))
+						pos++;
+					return Info.any(0, UNBOUNDED);
+				}
+				if(Character.isLetterOrDigit(c))
+					throw new UnsupportedException();
+				return Info.literal(String.valueOf(c));
+			}
+		}
+
+		private Info quantified(Info atom) throws UnsupportedException
+		{
+			if(!more())
+				return atom;
+
+			int min;
+			int max;
+			char c = peek();
+			if(c == '?')
+			{
+				min = 0;
+				max = 1;
+			}
+			else if(c == '*')
+			{
+				min = 0;
+				max = UNBOUNDED;
+			}
+			else if(c == '+')
+			{
+				min = 1;
+				max = UNBOUNDED;
+			}
+			else if(c == '{')
+			{
+				int end = regex.indexOf('}', pos);
+				if(end < 0)
+					throw new UnsupportedException();
+				String[] bounds = regex.substring(pos + 1, end).split(",", -1);
+				try
+				{
+					min = Integer.parseInt(bounds[0].trim());
+					if(bounds.length == 1)
+						max = min;
+					else if(bounds.length == 2)
+						max = bounds[1].trim().isEmpty() ? UNBOUNDED : Integer.parseInt(bounds[1].trim());
+					else
+						throw new UnsupportedException();
+				}
+				catch(NumberFormatException e)
+				{
+					throw new UnsupportedException();
+				}
+				pos = end;
+			}
+			else
+				return atom;
+			pos++;
+
+			boolean restricted = false;
+			// Quantificateurs paresseux ou possessifs
+			if(more() && peek() == '?')
+				pos++;
+			else if(more() && peek() == '+')
+			{
+				pos++;
+				restricted = true;
+			}
+			if(more() && (peek() == '?' || peek() == '*' || peek() == '+' || peek() == '{'))
+				throw new UnsupportedException();
+
+			Info info = repeat(atom, min, max);
+			if(restricted)
+				info.exact = false;
+			return info;
+		}
+	}
+
+	private static int add(int a, int b)
+	{
+		if(a == UNBOUNDED || b == UNBOUNDED)
+			return UNBOUNDED;
+		long sum = (long) a + b;
+		return sum >= UNBOUNDED ? UNBOUNDED : (int) sum;
+	}
+
+	private static int multiply(int a, int n)
+	{
+		if(a == 0 || n == 0)
+			return 0;
+		if(a == UNBOUNDED || n == UNBOUNDED)
+			return UNBOUNDED;
+		long product = (long) a * n;
+		return product >= UNBOUNDED ? UNBOUNDED : (int) product;
+	}
+
+	private static Info concat(Info a, Info b)
+	{
+		Info info = new Info();
+		info.min = add(a.min, b.min);
+		info.max = add(a.max, b.max);
+		info.prefix = isSingle(a) ? a.prefix + b.prefix : a.prefix;
+		info.suffix = isSingle(b) ? a.suffix + b.suffix : b.suffix;
+		info.literals = null;
+		if(a.literals != null && b.literals != null && a.literals.size() * b.literals.size() <= MAX_LITERALS)
+		{
+			info.literals = new HashSet<>();
+			for(String x : a.literals)
+			{
+				for(String y : b.literals)
+					info.literals.add(x + y);
+			}
+		}
+		info.exact = a.exact && b.exact && info.literals != null;
+		return info;
+	}
+
+	private static Info union(Info a, Info b)
+	{
+		Info info = new Info();
+		info.min = Math.min(a.min, b.min);
+		info.max = Math.max(a.max, b.max);
+		info.prefix = commonPrefix(a.prefix, b.prefix);
+		info.suffix = commonSuffix(a.suffix, b.suffix);
+		info.literals = null;
+		if(a.literals != null && b.literals != null && a.literals.size() + b.literals.size() <= MAX_LITERALS)
+		{
+			info.literals = new HashSet<>(a.literals);
+			info.literals.addAll(b.literals);
+		}
+		info.exact = a.exact && b.exact && info.literals != null;
+		return info;
+	}
+
+	private static Info repeat(Info atom, int min, int max)
+	{
+		if(max != UNBOUNDED && max < min)
+			max = min;
+
+		Info info;
+		if(max != UNBOUNDED && max <= MAX_LITERALS && atom.literals != null)
+		{
+			// Développement : atom[min] (atom?)[max - min]
+			Info optional = union(atom, Info.literal(""));
+			info = Info.literal("");
+			for(int i = 0; i < max; i++)
+				info = concat(info, i < min ? atom : optional);
+			return info;
+		}
+
+		info = new Info();
+		info.min = multiply(atom.min, min);
+		info.max = multiply(atom.max, max);
+		info.prefix = min > 0 ? atom.prefix : "";
+		info.suffix = min > 0 ? atom.suffix : "";
+		info.literals = null;
+		info.exact = false;
+		return info;
+	}
+
+	private static boolean isSingle(Info info)
+	{
+		return info.literals != null && info.literals.size() == 1;
+	}
+
+	private static String commonPrefix(String a, String b)
+	{
+		int i = 0;
+		while(i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i))
+			i++;
+		return a.substring(0, i);
+	}
+
+	private static String commonSuffix(String a, String b)
+	{
+		int i = 0;
+		while(i < a.length() && i < b.length() && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i))
+			i++;
+		return a.substring(a.length() - i);
+	}
+
+	/**
+	 * @return the filter of the regex, accepting everything if the regex can't
+	 *         be analyzed
+	 */
+	public static RegexPrefilter analyze(String regex)
+	{
+		try
+		{
+			Info info = new Analyzer(regex).analyze();
+			Set<String> literals = info.literals == null ? null : Collections.unmodifiableSet(info.literals);
+			return new RegexPrefilter(info.min, info.max, info.prefix, info.suffix, literals, info.exact);
+		}
+		catch(UnsupportedException e)
+		{
+			return ACCEPT_ALL;
+		}
+	}
+
+	/**
+	 * @return false if the element can't match the regex
+	 */
+	public boolean mayMatch(String element)
+	{
+		int length = element.length();
+		if(length < minLength || length > maxLength)
+			return false;
+		if(literals != null)
+			return literals.contains(element);
+		return element.startsWith(prefix) && element.endsWith(suffix);
+	}
+
+	/**
+	 * @return true if {@link #mayMatch(String)} is the result of the regex
+	 */
+	public boolean isExact()
+	{
+		return exact;
+	}
+
+	public int getMinLength()
+	{
+		return minLength;
+	}
+
+	/**
+	 * @return the maximum length or {@link #UNBOUNDED}
+	 */
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	public String getPrefix()
+	{
+		return prefix;
+	}
+
+	public String getSuffix()
+	{
+		return suffix;
+	}
+
+	/**
+	 * @return the strings that may match or null if there are too many
+	 */
+	public Set<String> getLiterals()
+	{
+		return literals;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+		s.append("length [").append(minLength).append(", ");
+		s.append(maxLength == UNBOUNDED ? "inf" : String.valueOf(maxLength)).append("]");
+		s.append(", prefix '").append(prefix).append("', suffix '").append(suffix).append("'");
+		if(literals != null)
+			s.append(", ").append(exact ? "exact " : "").append(literals);
+		return s.toString();
+	}
+}
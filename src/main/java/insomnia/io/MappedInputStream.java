@@ -0,0 +1,86 @@
+package insomnia.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream reading a file channel from its current position through
+ * memory mapped chunks, so that files bigger than 2 GB can be read. The
+ * chunks can also be read directly with {@link #nextChunk()}.
+ * The channel is not closed by the stream.
+ */
+public class MappedInputStream extends InputStream
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int chunkSize;
+	private long position;
+	private ByteBuffer chunk;
+
+	public MappedInputStream(FileChannel channel) throws IOException
+	{
+		this(channel, DEFAULT_CHUNK_SIZE);
+	}
+
+	public MappedInputStream(FileChannel channel, int chunkSize) throws IOException
+	{
+		if(chunkSize <= 0)
+			throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+
+		this.channel = channel;
+		this.chunkSize = chunkSize;
+		size = channel.size();
+		position = channel.position();
+		chunk = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * @return the unread part of the current chunk, or the next chunk if it is
+	 *         all read, or null at the end of the file
+	 * @throws IOException if the mapping fails
+	 */
+	public ByteBuffer nextChunk() throws IOException
+	{
+		if(chunk.hasRemaining())
+			return chunk;
+		if(position >= size)
+			return null;
+
+		long length = Math.min(chunkSize, size - position);
+		chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		position += length;
+		return chunk;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		ByteBuffer b = nextChunk();
+		if(b == null)
+			return -1;
+		return b.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if(len == 0)
+			return 0;
+		ByteBuffer c = nextChunk();
+		if(c == null)
+			return -1;
+		int n = Math.min(len, c.remaining());
+		c.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available()
+	{
+		return chunk.remaining();
+	}
+}
@@ -0,0 +1,16 @@
+package insomnia.json;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Folds json documents into an accumulator
+ * A : type of the accumulator
+ */
+public interface IJsonFolder<A>
+{
+	/**
+	 * @param document reader positioned before the first event of the document
+	 */
+	void fold(A accumulator, JsonParser.EventReader document) throws ParseException, IOException;
+}
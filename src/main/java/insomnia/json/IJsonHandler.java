@@ -0,0 +1,28 @@
+package insomnia.json;
+
+/**
+ * Receives the events of a json document read by
+ * {@link JsonParser#readJsonStream(java.io.InputStream, IJsonHandler)}
+ */
+public interface IJsonHandler
+{
+	void startObject();
+
+	void endObject();
+
+	void startArray();
+
+	void endArray();
+
+	void key(String key);
+
+	void string(String value);
+
+	void number(double value);
+
+	void bool(boolean value);
+
+	void nullValue();
+
+	void endDocument();
+}
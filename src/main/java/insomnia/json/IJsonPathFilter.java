@@ -0,0 +1,50 @@
+package insomnia.json;
+
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Drives a streaming read of a json document : the values whose key path is
+ * matched are built and given to the filter, the others are read without
+ * being built.
+ * S : state reached by a key path
+ */
+public interface IJsonPathFilter<S>
+{
+	S getInitialState();
+
+	/**
+	 * @return the state reached from state by the key, or null if no value under
+	 *         the key can be matched
+	 */
+	S nextState(S state, String key);
+
+	/**
+	 * Same as {@link #nextState(Object, String)} with the symbol of the key
+	 * 
+	 * @param symbol symbol of the key in {@link #getSymbols()} or
+	 *               {@link SymbolTable#NO_SYMBOL}
+	 */
+	default S nextState(S state, String key, int symbol)
+	{
+		return nextState(state, key);
+	}
+
+	/**
+	 * @return the table of the symbols expected by
+	 *         {@link #nextState(Object, String, int)}, null if the filter doesn't
+	 *         use symbols
+	 */
+	default SymbolTable getSymbols()
+	{
+		return null;
+	}
+
+	boolean isMatch(S state);
+
+	/**
+	 * Called once the value of a matched path is read
+	 * 
+	 * @param path the keys from the root joined by '.'
+	 */
+	void match(String path, Object value);
+}
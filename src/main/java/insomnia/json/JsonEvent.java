@@ -0,0 +1,11 @@
+package insomnia.json;
+
+/**
+ * Events given by {@link JsonParser.EventReader}
+ */
+public enum JsonEvent
+{
+	START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, //
+	KEY, VALUE_STRING, VALUE_NUMBER, VALUE_TRUE, VALUE_FALSE, VALUE_NULL, //
+	END_DOCUMENT;
+}
@@ -0,0 +1,410 @@
+package insomnia.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Reader of newline delimited json (one document per line). The input is cut
+ * into chunks of whole lines which are parsed in parallel on a fork join pool.
+ * Blank lines are ignored.
+ */
+public class JsonLinesReader
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+
+	/**
+	 * Gives the successive chunks of whole lines of the input
+	 */
+	private interface ChunkSource
+	{
+		/**
+		 * @return the next chunk or null at the end of the input
+		 */
+		ByteBuffer next() throws IOException;
+
+		/**
+		 * @return the offset in the input of the last chunk
+		 */
+		long getOffset();
+	}
+
+	private static final class StreamChunks implements ChunkSource
+	{
+		private final InputStream jsonStream;
+		private final int chunkSize;
+		private byte[] carry;
+		private int carryLength;
+		private boolean eof;
+		private long offset;
+		private long nextOffset;
+
+		StreamChunks(InputStream jsonStream, int chunkSize)
+		{
+			this.jsonStream = jsonStream;
+			this.chunkSize = chunkSize;
+			carry = new byte[0];
+			carryLength = 0;
+			eof = false;
+			nextOffset = 0;
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException
+		{
+			byte[] bytes = Arrays.copyOf(carry, Math.max(chunkSize, carryLength));
+			int length = carryLength;
+			int searchFrom = carryLength;
+			while(true)
+			{
+				while(!eof && length < bytes.length)
+				{
+					int n = jsonStream.read(bytes, length, bytes.length - length);
+					if(n == -1)
+						eof = true;
+					else
+						length += n;
+				}
+				// Fin de la dernière ligne complète
+				int cut = -1;
+				for(int i = length - 1; i >= searchFrom; i--)
+				{
+					if(bytes[i] == '\n')
+					{
+						cut = i + 1;
+						break;
+					}
+				}
+				if(eof && cut == -1)
+					cut = length;
+				if(cut != -1)
+				{
+					carryLength = length - cut;
+					carry = Arrays.copyOfRange(bytes, cut, length);
+					offset = nextOffset;
+					nextOffset += cut;
+					return cut == 0 ? null : ByteBuffer.wrap(bytes, 0, cut);
+				}
+				// Ligne plus longue que le morceau
+				searchFrom = length;
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+		}
+
+		@Override
+		public long getOffset()
+		{
+			return offset;
+		}
+	}
+
+	private static final class MappedChunks implements ChunkSource
+	{
+		private final FileChannel channel;
+		private final int chunkSize;
+		private final long size;
+		private long position;
+		private long offset;
+
+		MappedChunks(FileChannel channel, int chunkSize) throws IOException
+		{
+			this.channel = channel;
+			this.chunkSize = chunkSize;
+			size = channel.size();
+			position = channel.position();
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException
+		{
+			if(position >= size)
+				return null;
+
+			long length = Math.min(chunkSize, size - position);
+			while(true)
+			{
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int cut = -1;
+				if(position + length == size)
+					cut = (int) length;
+				else
+				{
+					for(int i = (int) length - 1; i >= 0; i--)
+					{
+						if(chunk.get(i) == '\n')
+						{
+							cut = i + 1;
+							break;
+						}
+					}
+				}
+				if(cut != -1)
+				{
+					chunk.limit(cut);
+					offset = position;
+					position += cut;
+					return chunk;
+				}
+				// Ligne plus longue que le morceau
+				if(length == Integer.MAX_VALUE)
+					throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes at " + position);
+				length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+			}
+		}
+
+		@Override
+		public long getOffset()
+		{
+			return offset;
+		}
+	}
+
+	// Transporte les exceptions vérifiées d'une tâche
+	private static final class ChunkException extends RuntimeException
+	{
+		private static final long serialVersionUID = 4790327474417850318L;
+
+		ChunkException(Exception cause)
+		{
+			super(cause);
+		}
+	}
+
+	private final JsonParser parser;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	public JsonLinesReader()
+	{
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize approximate size in bytes of the parallel units of work
+	 */
+	public JsonLinesReader(ForkJoinPool pool, int chunkSize)
+	{
+		this(pool, chunkSize, null);
+	}
+
+	/**
+	 * @param symbols table interning the keys of all the documents, shared by
+	 *                the parsing threads
+	 */
+	public JsonLinesReader(ForkJoinPool pool, int chunkSize, SymbolTable symbols)
+	{
+		if(chunkSize <= 0)
+			throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+
+		parser = new JsonParser(symbols);
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return the trees of the documents in the order of the input
+	 * @see JsonParser#readJsonStream(InputStream)
+	 */
+	public List<Object> readJsonLines(InputStream jsonStream) throws ParseException, IOException
+	{
+		return foldJsonLines(jsonStream, ArrayList::new, this::addTree, JsonLinesReader::concat);
+	}
+
+	public List<Object> readJsonLines(Path jsonFile) throws ParseException, IOException
+	{
+		return foldJsonLines(jsonFile, ArrayList::new, this::addTree, JsonLinesReader::concat);
+	}
+
+	/**
+	 * Give the tree of each document to the action, in no particular order and
+	 * from several threads
+	 */
+	public void forEachJsonLine(InputStream jsonStream, Consumer<Object> action) throws ParseException, IOException
+	{
+		foldJsonLines(jsonStream, () -> null, (a, d) -> action.accept(parser.readJson(d)), (a, b) -> null);
+	}
+
+	public void forEachJsonLine(Path jsonFile, Consumer<Object> action) throws ParseException, IOException
+	{
+		foldJsonLines(jsonFile, () -> null, (a, d) -> action.accept(parser.readJson(d)), (a, b) -> null);
+	}
+
+	/**
+	 * Fold the documents of each chunk into a new accumulator, then combine the
+	 * accumulators in the order of the input.
+	 * 
+	 * @param supplier new accumulator of a chunk
+	 * @param folder   folds a document into the accumulator of its chunk
+	 * @param combiner combines the accumulators of two consecutive parts of the
+	 *                 input
+	 */
+	public <A> A foldJsonLines(InputStream jsonStream, Supplier<A> supplier, IJsonFolder<A> folder,
+			BinaryOperator<A> combiner) throws ParseException, IOException
+	{
+		return fold(new StreamChunks(jsonStream, chunkSize), supplier, folder, combiner);
+	}
+
+	public <A> A foldJsonLines(Path jsonFile, Supplier<A> supplier, IJsonFolder<A> folder,
+			BinaryOperator<A> combiner) throws ParseException, IOException
+	{
+		try(FileChannel channel = FileChannel.open(jsonFile, StandardOpenOption.READ))
+		{
+			return fold(new MappedChunks(channel, chunkSize), supplier, folder, combiner);
+		}
+	}
+
+	private void addTree(List<Object> trees, JsonParser.EventReader document) throws ParseException, IOException
+	{
+		trees.add(parser.readJson(document));
+	}
+
+	private static List<Object> concat(List<Object> a, List<Object> b)
+	{
+		a.addAll(b);
+		return a;
+	}
+
+	private <A> A fold(ChunkSource chunks, Supplier<A> supplier, IJsonFolder<A> folder, BinaryOperator<A> combiner)
+			throws ParseException, IOException
+	{
+		// Nombre borné de morceaux en attente pour limiter la mémoire
+		int maxPending = 2 * pool.getParallelism() + 1;
+		ArrayDeque<ForkJoinTask<A>> pending = new ArrayDeque<>();
+		A result = null;
+		boolean first = true;
+		try
+		{
+			ByteBuffer chunk;
+			while((chunk = chunks.next()) != null)
+			{
+				ByteBuffer c = chunk;
+				long offset = chunks.getOffset();
+				pending.add(pool.submit(() -> {
+					try
+					{
+						return foldChunk(c, offset, supplier, folder);
+					}
+					catch(ParseException | IOException e)
+					{
+						throw new ChunkException(e);
+					}
+				}));
+
+				while(pending.size() >= maxPending || (!pending.isEmpty() && pending.peek().isDone()))
+				{
+					A a = get(pending.poll());
+					result = first ? a : combiner.apply(result, a);
+					first = false;
+				}
+			}
+			while(!pending.isEmpty())
+			{
+				A a = get(pending.poll());
+				result = first ? a : combiner.apply(result, a);
+				first = false;
+			}
+		}
+		finally
+		{
+			for(ForkJoinTask<A> task : pending)
+				task.cancel(false);
+		}
+		return first ? supplier.get() : result;
+	}
+
+	private <A> A foldChunk(ByteBuffer chunk, long offset, Supplier<A> supplier, IJsonFolder<A> folder)
+			throws ParseException, IOException
+	{
+		A accumulator = supplier.get();
+		int end = chunk.limit();
+		int lineStart = chunk.position();
+		while(lineStart < end)
+		{
+			int lineEnd = lineStart;
+			boolean blank = true;
+			for(; lineEnd < end; lineEnd++)
+			{
+				byte b = chunk.get(lineEnd);
+				if(b == '\n')
+					break;
+				if(b != ' ' && b != '\t' && b != '\r')
+					blank = false;
+			}
+
+			if(!blank)
+			{
+				ByteBuffer line = chunk.duplicate();
+				line.limit(lineEnd);
+				line.position(lineStart);
+				JsonParser.EventReader document = parser.newEventReader(line.slice());
+				try
+				{
+					folder.fold(accumulator, document);
+					// Le reste de la ligne doit être vide
+					while(document.nextEvent() != JsonEvent.END_DOCUMENT)
+						;
+				}
+				catch(ParseException e)
+				{
+					ParseException lineException = new ParseException(
+							e.getMessage() + " in the line at byte " + (offset + lineStart), e.getErrorOffset());
+					lineException.initCause(e);
+					throw lineException;
+				}
+			}
+			lineStart = lineEnd + 1;
+		}
+		return accumulator;
+	}
+
+	private static <A> A get(ForkJoinTask<A> task) throws ParseException, IOException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading the lines");
+		}
+		catch(ExecutionException | RuntimeException e)
+		{
+			// Le pool peut envelopper l'exception de la tâche plusieurs fois
+			for(Throwable t = e; t != null; t = t.getCause())
+			{
+				if(t instanceof ChunkException)
+				{
+					if(t.getCause() instanceof ParseException)
+						throw (ParseException) t.getCause();
+					throw (IOException) t.getCause();
+				}
+			}
+			if(e instanceof RuntimeException)
+				throw (RuntimeException) e;
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package insomnia.json;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -9,7 +14,9 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
-import java.util.regex.Pattern;
+
+import insomnia.io.MappedInputStream;
+import insomnia.symbol.SymbolTable;
 
 public class JsonParser
 {
@@ -24,210 +31,755 @@ public class JsonParser
 		OPEN_BRACE, CLOSE_BRACE;
 	}
 
+	private static final int BUFFER_SIZE = 8192;
+
+	private final SymbolTable symbols;
+
+	public JsonParser()
+	{
+		this(null);
+	}
+
 	/**
-	 * Contains the type and the data of the Lexer elements
+	 * @param symbols table interning the keys, null to create a String for each
+	 *                key
 	 */
-	private class LexerValue
+	public JsonParser(SymbolTable symbols)
 	{
-		private Token token;
-		private String data;
+		this.symbols = symbols;
+	}
 
-		public LexerValue(Token token, String data)
-		{
-			this.token = token;
-			this.data = data;
-		}
+	public SymbolTable getSymbols()
+	{
+		return symbols;
+	}
 
-		public Token getToken()
+	/**
+	 * Gives the successive windows of the bytes to read
+	 */
+	private interface ByteSource
+	{
+		/**
+		 * @return the next window or null at the end of the input
+		 */
+		ByteBuffer next() throws IOException;
+	}
+
+	private static final class StreamSource implements ByteSource
+	{
+		private final InputStream jsonStream;
+		private final byte[] bytes;
+		private final ByteBuffer buffer;
+
+		public StreamSource(InputStream jsonStream)
 		{
-			return token;
+			this.jsonStream = jsonStream;
+			bytes = new byte[BUFFER_SIZE];
+			buffer = ByteBuffer.wrap(bytes);
 		}
 
-		public String getData()
+		@Override
+		public ByteBuffer next() throws IOException
 		{
-			return data;
+			int n = jsonStream.read(bytes);
+			if(n == -1)
+				return null;
+			buffer.clear();
+			buffer.limit(n);
+			return buffer;
 		}
 	}
 
 	/**
-	 * The different states of the Lexer automaton
+	 * Lexer over windows of bytes decoded as UTF-8. The data of the last token is
+	 * kept in a reused buffer, a String is only created if the parser asks for
+	 * it.
 	 */
-	private enum LexerState
-	{
-		START, BACKSLASH, STRING, NUMBER, LITERAL;
-	}
-
 	private class Lexer
 	{
-		private InputStream jsonStream;
-		private boolean readLastChar;
-		private int lastChar;
-		private int offset;
+		private final ByteSource source;
+		private ByteBuffer window;
+		private boolean eof;
+		private long offset;
 
-		public Lexer(InputStream jsonStream) throws IOException
+		private final StringBuilder data;
+		private Boolean literal;
+
+		public Lexer(ByteSource source)
 		{
-			this.jsonStream = jsonStream;
-			readLastChar = false;
-			lastChar = ' ';
+			this.source = source;
+			window = ByteBuffer.allocate(0);
+			eof = false;
 			offset = 0;
+			data = new StringBuilder();
 		}
 
-		private final Pattern NUMBER = Pattern.compile("\\-?([1-9][0-9]*|0)(.([0-9]*[1-9]|0))?([Ee][+-]?[1-9][0-9]*)?");
+		private boolean nextWindow() throws IOException
+		{
+			while(!eof)
+			{
+				ByteBuffer next = source.next();
+				if(next == null)
+					eof = true;
+				else if(next.hasRemaining())
+				{
+					window = next;
+					return true;
+				}
+			}
+			return false;
+		}
 
-		private boolean isNumber(String s)
+		private int read() throws IOException
 		{
-			return NUMBER.matcher(s).matches();
+			if(!window.hasRemaining() && !nextWindow())
+				return -1;
+			offset++;
+			return window.get() & 0xff;
 		}
 
-		private boolean isLiteral(String s)
+		/**
+		 * @return the offset to report in a ParseException, which only holds an
+		 *         int
+		 */
+		private int errorOffset()
 		{
-			return s.equals("true") || s.equals("false") || s.equals("null");
+			return (int) Math.min(offset, Integer.MAX_VALUE);
 		}
 
-		public LexerValue nextToken() throws IOException, ParseException
+		private int peek() throws IOException
 		{
-			LexerState lexerState = LexerState.START;
-			String data = "";
+			if(!window.hasRemaining() && !nextWindow())
+				return -1;
+			return window.get(window.position()) & 0xff;
+		}
 
-			char c;
+		private boolean isDigit(int d)
+		{
+			return d >= '0' && d <= '9';
+		}
+
+		private boolean isLetter(int d)
+		{
+			return (d >= 'a' && d <= 'z') || (d >= 'A' && d <= 'Z');
+		}
+
+		/**
+		 * RFC 8259 number syntax
+		 */
+		private boolean isNumber(CharSequence s)
+		{
+			int n = s.length();
+			int i = 0;
+			if(i < n && s.charAt(i) == '-')
+				i++;
+			if(i == n)
+				return false;
+			if(s.charAt(i) == '0')
+				i++;
+			else if(isDigit(s.charAt(i)))
+			{
+				while(i < n && isDigit(s.charAt(i)))
+					i++;
+			}
+			else
+				return false;
+
+			if(i < n && s.charAt(i) == '.')
+			{
+				int start = ++i;
+				while(i < n && isDigit(s.charAt(i)))
+					i++;
+				if(i == start)
+					return false;
+			}
+			if(i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E'))
+			{
+				i++;
+				if(i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+					i++;
+				int start = i;
+				while(i < n && isDigit(s.charAt(i)))
+					i++;
+				if(i == start)
+					return false;
+			}
+			return i == n;
+		}
+
+		public Token nextToken() throws IOException, ParseException
+		{
 			int d;
+			do
+				d = read();
+			while(d == ' ' || d == '\t' || d == '\n' || d == '\r');
+
+			switch(d)
+			{
+			case -1:
+				return Token.END;
+			case ':':
+				return Token.COLON;
+			case ',':
+				return Token.COMMA;
+			case '[':
+				return Token.OPEN_RBRACKET;
+			case ']':
+				return Token.CLOSE_RBRACKET;
+			case '{':
+				return Token.OPEN_BRACE;
+			case '}':
+				return Token.CLOSE_BRACE;
+			case '"':
+				readString();
+				return Token.STRING;
+			}
+			if(isDigit(d) || d == '-')
+			{
+				readNumber(d);
+				return Token.NUMBER;
+			}
+			if(isLetter(d))
+			{
+				readLiteral(d);
+				return Token.LITERAL;
+			}
+			throw new ParseException("Invalid character '" + (char) d + "'", errorOffset());
+		}
+
+		private void readString() throws IOException, ParseException
+		{
+			data.setLength(0);
 			while(true)
 			{
-				if(readLastChar)
-				{
-					d = lastChar;
-					readLastChar = false;
-				}
+				int d = read();
+				if(d == -1)
+					throw new ParseException("EOF while reading String value", errorOffset());
+				if(d == '"')
+					return;
+				if(d == '\\')
+					readEscape();
+				else if(d < 0x80)
+					data.append((char) d);
 				else
+					readUTF8(d);
+			}
+		}
+
+		private void readEscape() throws IOException, ParseException
+		{
+			int d = read();
+			switch(d)
+			{
+			case -1:
+				throw new ParseException("EOF while reading String value", errorOffset());
+			case '"':
+			case '\\':
+			case '/':
+				data.append((char) d);
+				break;
+			case 'b':
+				data.append('\b');
+				break;
+			case 'f':
+				data.append('\f');
+				break;
+			case 'n':
+				data.append('\n');
+				break;
+			case 'r':
+				data.append('\r');
+				break;
+			case 't':
+				data.append('\t');
+				break;
+			case 'u':
+				int c = 0;
+				for(int i = 0; i < 4; i++)
 				{
-					d = jsonStream.read();
-					offset++;
+					int h = Character.digit(read(), 16);
+					if(h == -1)
+						throw new ParseException("Invalid unicode escape", errorOffset());
+					c = (c << 4) | h;
 				}
-				c = (char) d;
+				// Les paires de surrogates sont ajoutées telles quelles
+				data.append((char) c);
+				break;
+			default:
+				throw new ParseException("Invalid escape character '" + (char) d + "'", errorOffset());
+			}
+		}
+
+		private void readUTF8(int lead) throws IOException, ParseException
+		{
+			int n;
+			int min;
+			int cp;
+			if((lead & 0xe0) == 0xc0)
+			{
+				n = 1;
+				min = 0x80;
+				cp = lead & 0x1f;
+			}
+			else if((lead & 0xf0) == 0xe0)
+			{
+				n = 2;
+				min = 0x800;
+				cp = lead & 0x0f;
+			}
+			else if((lead & 0xf8) == 0xf0)
+			{
+				n = 3;
+				min = 0x10000;
+				cp = lead & 0x07;
+			}
+			else
+				throw new ParseException("Invalid UTF-8 sequence", errorOffset());
+
+			for(int i = 0; i < n; i++)
+			{
+				int d = read();
+				if((d & 0xc0) != 0x80)
+					throw new ParseException("Invalid UTF-8 sequence", errorOffset());
+				cp = (cp << 6) | (d & 0x3f);
+			}
+			// Encodages trop longs, surrogates et valeurs hors de l'Unicode
+			if(cp < min || cp > Character.MAX_CODE_POINT //
+					|| (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+				throw new ParseException("Invalid UTF-8 sequence", errorOffset());
+			data.appendCodePoint(cp);
+		}
 
-				switch(lexerState)
+		private void readNumber(int first) throws IOException, ParseException
+		{
+			data.setLength(0);
+			data.append((char) first);
+			int d = peek();
+			while(isDigit(d) || d == 'E' || d == 'e' || d == '.' || d == '-' || d == '+')
+			{
+				data.append((char) read());
+				d = peek();
+			}
+			if(!isNumber(data))
+				throw new ParseException("Invalid number syntax '" + data + "'", errorOffset());
+		}
+
+		private void readLiteral(int first) throws IOException, ParseException
+		{
+			data.setLength(0);
+			data.append((char) first);
+			while(isLetter(peek()))
+				data.append((char) read());
+
+			if("true".contentEquals(data))
+				literal = Boolean.TRUE;
+			else if("false".contentEquals(data))
+				literal = Boolean.FALSE;
+			else if("null".contentEquals(data))
+				literal = null;
+			else
+				throw new ParseException("Unknown literal '" + data + "'", errorOffset());
+		}
+
+		/**
+		 * @return the value of the last STRING token
+		 */
+		public String getString()
+		{
+			return data.toString();
+		}
+
+		/**
+		 * @param intern if a new key is added to the table
+		 * @return the symbol of the last STRING token read as a key, found
+		 *         without creating a String, {@link SymbolTable#NO_SYMBOL} if
+		 *         there is no table or if the key is new and not interned
+		 */
+		public int getKeySymbol(boolean intern)
+		{
+			if(symbols == null)
+				return SymbolTable.NO_SYMBOL;
+			return intern ? symbols.intern(data) : symbols.getSymbol(data);
+		}
+
+		/**
+		 * @return the value of the last NUMBER token
+		 */
+		public double getNumber()
+		{
+			return Double.parseDouble(data.toString());
+		}
+
+		/**
+		 * @return the value of the last LITERAL token
+		 */
+		public Boolean getLiteral()
+		{
+			return literal;
+		}
+	}
+
+	/**
+	 * The different states of the Parser automaton
+	 */
+	private enum ReaderState
+	{
+		END, KEY, VALUE, COLON,//
+		OPEN_OBJECT, OPEN_ARRAY,//
+		COMMA_OBJECT, COMMA_ARRAY;
+	};
+
+	/**
+	 * Pull reader giving the events of a json document one by one. The value of
+	 * the last KEY, VALUE_STRING or VALUE_NUMBER event is only created if it is
+	 * asked for.
+	 * Duplicated keys are not detected, it is up to the consumer.
+	 */
+	public final class EventReader implements Closeable
+	{
+		private final Lexer lexer;
+		private final Closeable resource;
+		private final ArrayDeque<ReaderState> readerStateStack;
+		private Token token;
+		private boolean skipLexer;
+		private String key;
+		private int symbol;
+		private JsonEvent event;
+		// Faux pour une lecture filtrée : les clés inconnues n'étendent pas la table
+		private boolean intern;
+
+		private EventReader(ByteSource source, Closeable resource)
+		{
+			lexer = new Lexer(source);
+			this.resource = resource;
+			readerStateStack = new ArrayDeque<ReaderState>();
+			readerStateStack.push(ReaderState.END);
+			readerStateStack.push(ReaderState.VALUE);
+			skipLexer = false;
+			symbol = SymbolTable.NO_SYMBOL;
+			intern = true;
+		}
+
+		/**
+		 * @return the next event, END_DOCUMENT once the document is read
+		 * @throws ParseException if the document is invalid
+		 */
+		public JsonEvent nextEvent() throws ParseException, IOException
+		{
+			ReaderState state;
+			while(true)
+			{
+				if(readerStateStack.isEmpty())
+					return event = JsonEvent.END_DOCUMENT;
+
+				state = readerStateStack.pop();
+
+				if(skipLexer)
+					skipLexer = false;
+				else
+					token = lexer.nextToken();
+
+				switch(state)
 				{
-				case START:
-					if(d == -1)
-						return new LexerValue(Token.END, null);
-					if(c == ':')
-						return new LexerValue(Token.COLON, null);
-					if(c == ',')
-						return new LexerValue(Token.COMMA, null);
-					if(c == '[')
-						return new LexerValue(Token.OPEN_RBRACKET, null);
-					if(c == ']')
-						return new LexerValue(Token.CLOSE_RBRACKET, null);
-					if(c == '{')
-						return new LexerValue(Token.OPEN_BRACE, null);
-					if(c == '}')
-						return new LexerValue(Token.CLOSE_BRACE, null);
-					if(c == '"')
+				case VALUE:
+					if(token == Token.OPEN_BRACE)
 					{
-						lexerState = LexerState.STRING;
-						break;
+						readerStateStack.push(ReaderState.OPEN_OBJECT);
+						return event = JsonEvent.START_OBJECT;
 					}
-					if(Character.isDigit(c) || c == '-')
+					if(token == Token.OPEN_RBRACKET)
 					{
-						lexerState = LexerState.NUMBER;
-						data += c;
-						break;
+						readerStateStack.push(ReaderState.OPEN_ARRAY);
+						return event = JsonEvent.START_ARRAY;
 					}
-					if(Character.isLetter(c))
+					if(token == Token.STRING)
+						return event = JsonEvent.VALUE_STRING;
+					if(token == Token.NUMBER)
+						return event = JsonEvent.VALUE_NUMBER;
+					if(token == Token.LITERAL)
 					{
-						lexerState = LexerState.LITERAL;
-						data += c;
-						break;
+						Boolean literal = lexer.getLiteral();
+						if(literal == null)
+							return event = JsonEvent.VALUE_NULL;
+						return event = literal ? JsonEvent.VALUE_TRUE : JsonEvent.VALUE_FALSE;
 					}
-					if(c != ' ' && c != '\t' && c != '\n' && c != '\r')
-						throw new ParseException("Invalid character '" + c + "'", offset);
+					throw new ParseException("Value expected", lexer.errorOffset());
+
+				case KEY:
+					if(token != Token.STRING)
+						throw new ParseException("Invalid key", lexer.errorOffset());
+					symbol = lexer.getKeySymbol(intern);
+					key = symbol == SymbolTable.NO_SYMBOL ? lexer.getString() : symbols.getKey(symbol);
+					return event = JsonEvent.KEY;
+
+				case COLON:
+					if(token != Token.COLON)
+						throw new ParseException("Missing ':' after the key '" + key + "'", lexer.errorOffset());
 					break;
 
-				case BACKSLASH:
-					if(d == -1)
-						throw new ParseException("EOF while reading String value", offset);
-					lexerState = LexerState.STRING;
-					data += c;
+				case OPEN_OBJECT:
+					if(token == Token.CLOSE_BRACE)
+						return event = JsonEvent.END_OBJECT;
+					readerStateStack.push(ReaderState.COMMA_OBJECT);
+					readerStateStack.push(ReaderState.VALUE);
+					readerStateStack.push(ReaderState.COLON);
+					readerStateStack.push(ReaderState.KEY);
+					skipLexer = true;
 					break;
 
-				case STRING:
-					if(d == -1)
-						throw new ParseException("EOF while reading String value", offset);
-					if(c == '\\')
-					{
-						lexerState = LexerState.BACKSLASH;
-						break;
-					}
-					if(c != '"')
-					{
-						data += c;
-						break;
-					}
-					return new LexerValue(Token.STRING, data);
+				case OPEN_ARRAY:
+					if(token == Token.CLOSE_RBRACKET)
+						return event = JsonEvent.END_ARRAY;
+					readerStateStack.push(ReaderState.COMMA_ARRAY);
+					readerStateStack.push(ReaderState.VALUE);
+					skipLexer = true;
+					break;
 
-				case NUMBER:
-					if(Character.isDigit(c) || c == 'E' || c == 'e' || c == '.' || c == '-' || c == '+')
-					{
-						data += c;
-						break;
-					}
-					if(isNumber(data))
-					{
-						readLastChar = true;
-						lastChar = d;
-						return new LexerValue(Token.NUMBER, data);
-					}
-					throw new ParseException("Invalid number syntax '" + data + "'", offset);
+				case COMMA_OBJECT:
+					if(token == Token.CLOSE_BRACE)
+						return event = JsonEvent.END_OBJECT;
+					if(token != Token.COMMA)
+						throw new ParseException("Expected ',' or '}'", lexer.errorOffset());
+					readerStateStack.push(ReaderState.COMMA_OBJECT);
+					readerStateStack.push(ReaderState.VALUE);
+					readerStateStack.push(ReaderState.COLON);
+					readerStateStack.push(ReaderState.KEY);
+					break;
 
-				case LITERAL:
-					if(Character.isLetter(c))
-					{
-						data += c;
-						break;
-					}
-					if(isLiteral(data))
-					{
-						readLastChar = true;
-						lastChar = d;
-						return new LexerValue(Token.LITERAL, data);
-					}
-					throw new ParseException("Unknown literal '" + data + "'", offset);
+				case COMMA_ARRAY:
+					if(token == Token.CLOSE_RBRACKET)
+						return event = JsonEvent.END_ARRAY;
+					if(token != Token.COMMA)
+						throw new ParseException("Expected ',' or ']'", lexer.errorOffset());
+					readerStateStack.push(ReaderState.COMMA_ARRAY);
+					readerStateStack.push(ReaderState.VALUE);
+					break;
+
+				case END:
+					if(token == Token.END)
+						return event = JsonEvent.END_DOCUMENT;
+					throw new ParseException("Invalid Json stream", lexer.errorOffset());
 
 				default:
-					throw new ParseException("Lexer Error", offset);
+					throw new ParseException("An unknown error occured...", lexer.errorOffset());
 				}
 			}
 		}
+
+		/**
+		 * @return the last event
+		 */
+		public JsonEvent getEvent()
+		{
+			return event;
+		}
+
+		/**
+		 * @return the key of a KEY event or the value of a VALUE_STRING event
+		 */
+		public String getString()
+		{
+			if(event == JsonEvent.KEY)
+				return key;
+			return lexer.getString();
+		}
+
+		/**
+		 * @return the symbol of the key of a KEY event, {@link SymbolTable#NO_SYMBOL}
+		 *         if the parser has no symbol table or if a filtered read meets a
+		 *         key missing from the table
+		 */
+		public int getSymbol()
+		{
+			if(event != JsonEvent.KEY)
+				return SymbolTable.NO_SYMBOL;
+			return symbol;
+		}
+
+		/**
+		 * @return the value of a VALUE_NUMBER event
+		 */
+		public double getNumber()
+		{
+			return lexer.getNumber();
+		}
+
+		/**
+		 * @return the value of the last value event, containers excepted
+		 */
+		public Object getValue()
+		{
+			switch(event)
+			{
+			case VALUE_STRING:
+				return lexer.getString();
+			case VALUE_NUMBER:
+				return lexer.getNumber();
+			case VALUE_TRUE:
+				return true;
+			case VALUE_FALSE:
+				return false;
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * @return the number of bytes read
+		 */
+		public long getOffset()
+		{
+			return lexer.offset;
+		}
+
+		/**
+		 * @return the number of bytes read, bounded to be given to a
+		 *         ParseException
+		 */
+		public int getErrorOffset()
+		{
+			return lexer.errorOffset();
+		}
+
+		/**
+		 * Close the file opened by the reader, a given stream or channel is not
+		 * closed
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			if(resource != null)
+				resource.close();
+		}
 	}
 
-	private Double toNumber(String s)
+	public EventReader newEventReader(InputStream jsonStream)
 	{
-		return Double.parseDouble(s);
+		return new EventReader(new StreamSource(jsonStream), null);
 	}
 
-	private Boolean toLiteral(String s) throws ParseException
+	/**
+	 * Reader of the file through memory mapped chunks, the file is closed by
+	 * {@link EventReader#close()}
+	 */
+	public EventReader newEventReader(Path jsonFile) throws IOException
 	{
-		if(s.equals("true"))
-			return true;
-		if(s.equals("false"))
-			return false;
-		if(s.equals("null"))
-			return null;
-		throw new ParseException("Invalid literal : " + s, 0);
+		FileChannel channel = FileChannel.open(jsonFile, StandardOpenOption.READ);
+		try
+		{
+			return new EventReader(new MappedInputStream(channel)::nextChunk, channel);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			// Aucun lecteur ne fermera le fichier
+			try
+			{
+				channel.close();
+			}
+			catch(IOException c)
+			{
+				e.addSuppressed(c);
+			}
+			throw e;
+		}
 	}
 
 	/**
-	 * The different states of the Parser automaton
+	 * Reader of the remaining bytes of the buffer
 	 */
-	private enum ReaderState
+	public EventReader newEventReader(ByteBuffer jsonBuffer)
 	{
-		END, KEY, VALUE, COLON,//
-		OPEN_OBJECT, OPEN_ARRAY,//
-		COMMA_OBJECT, COMMA_ARRAY,//
-		STORE_IN_OBJECT, STORE_IN_ARRAY;
-	};
+		ByteSource source = new ByteSource()
+		{
+			boolean read = false;
 
-	private final String ROOT_KEY = "ROOT_KEY";
+			@Override
+			public ByteBuffer next()
+			{
+				if(read)
+					return null;
+				read = true;
+				return jsonBuffer;
+			}
+		};
+		return new EventReader(source, null);
+	}
+
+	/**
+	 * Reader of the channel from its current position through memory mapped
+	 * chunks
+	 */
+	public EventReader newEventReader(FileChannel jsonChannel) throws IOException
+	{
+		return new EventReader(new MappedInputStream(jsonChannel)::nextChunk, null);
+	}
+
+	/**
+	 * Push the events of the document to the handler
+	 * 
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public void readJsonStream(InputStream jsonStream, IJsonHandler handler) throws ParseException, IOException
+	{
+		readJson(newEventReader(jsonStream), handler);
+	}
+
+	public void readJsonStream(Path jsonFile, IJsonHandler handler) throws ParseException, IOException
+	{
+		try(EventReader reader = newEventReader(jsonFile))
+		{
+			readJson(reader, handler);
+		}
+	}
+
+	public void readJsonStream(FileChannel jsonChannel, IJsonHandler handler) throws ParseException, IOException
+	{
+		readJson(newEventReader(jsonChannel), handler);
+	}
+
+	private void readJson(EventReader reader, IJsonHandler handler) throws ParseException, IOException
+	{
+		while(true)
+		{
+			switch(reader.nextEvent())
+			{
+			case START_OBJECT:
+				handler.startObject();
+				break;
+			case END_OBJECT:
+				handler.endObject();
+				break;
+			case START_ARRAY:
+				handler.startArray();
+				break;
+			case END_ARRAY:
+				handler.endArray();
+				break;
+			case KEY:
+				handler.key(reader.getString());
+				break;
+			case VALUE_STRING:
+				handler.string(reader.getString());
+				break;
+			case VALUE_NUMBER:
+				handler.number(reader.getNumber());
+				break;
+			case VALUE_TRUE:
+				handler.bool(true);
+				break;
+			case VALUE_FALSE:
+				handler.bool(false);
+				break;
+			case VALUE_NULL:
+				handler.nullValue();
+				break;
+			case END_DOCUMENT:
+				handler.endDocument();
+				return;
+			}
+		}
+	}
 
 	/**
 	 * 
@@ -237,145 +789,219 @@ public class JsonParser
 	 * @throws ParseException
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	public Object readJsonStream(InputStream jsonStream) throws ParseException, IOException
 	{
-		Lexer lexer = new Lexer(jsonStream);
-		LinkedHashMap<String, Object> datas = new LinkedHashMap<String, Object>();
-
-		ArrayDeque<ReaderState> readerStateStack = new ArrayDeque<ReaderState>();
-		Stack<Object> dataStack = new Stack<Object>();
-
-		dataStack.push(datas);
-		dataStack.push(ROOT_KEY);
+		return readJson(newEventReader(jsonStream));
+	}
 
-		readerStateStack.push(ReaderState.END);
-		readerStateStack.push(ReaderState.STORE_IN_OBJECT);
-		readerStateStack.push(ReaderState.VALUE);
+	/**
+	 * Read the file through memory mapped chunks
+	 * 
+	 * @see #readJsonStream(InputStream)
+	 */
+	public Object readJsonStream(Path jsonFile) throws ParseException, IOException
+	{
+		try(EventReader reader = newEventReader(jsonFile))
+		{
+			return readJson(reader);
+		}
+	}
 
-		ReaderState state;
+	/**
+	 * Read the channel from its current position through memory mapped chunks,
+	 * the channel is not closed
+	 * 
+	 * @see #readJsonStream(InputStream)
+	 */
+	public Object readJsonStream(FileChannel jsonChannel) throws ParseException, IOException
+	{
+		return readJson(newEventReader(jsonChannel));
+	}
 
+	/**
+	 * Build the tree of the next value of the reader
+	 */
+	Object readJson(EventReader reader) throws ParseException, IOException
+	{
+		// Conteneurs ouverts, chacun précédé de sa clé dans un objet
+		Stack<Object> dataStack = new Stack<Object>();
 		Object val;
-		String key;
-
-		LexerValue v = null;
-		Token token = null;
-		String data = null;
 
-		boolean skipLexer = false;
 		while(true)
 		{
-			state = readerStateStack.pop();
-
-			if(skipLexer)
-				skipLexer = false;
-			else
-			{
-				v = lexer.nextToken();
-				token = v.getToken();
-				data = v.getData();
-			}
-
-			switch(state)
+			switch(reader.nextEvent())
 			{
-			case VALUE:
-				if(token == Token.OPEN_BRACE)
-					readerStateStack.push(ReaderState.OPEN_OBJECT);
-				else if(token == Token.OPEN_RBRACKET)
-					readerStateStack.push(ReaderState.OPEN_ARRAY);
-				else if(token == Token.STRING)
-					dataStack.push(data);
-				else if(token == Token.NUMBER)
-					dataStack.push(toNumber(data));
-				else if(token == Token.LITERAL)
-					dataStack.push(toLiteral(data));
-				else
-					throw new ParseException("Value expected", lexer.offset);
-				break;
-
+			case START_OBJECT:
+				dataStack.push(new LinkedHashMap<String, Object>());
+				continue;
+			case START_ARRAY:
+				dataStack.push(new ArrayList<Object>());
+				continue;
 			case KEY:
-				if(token != Token.STRING)
-					throw new ParseException("Invalid key", lexer.offset);
-				dataStack.push(data);
+				dataStack.push(reader.getString());
+				continue;
+			case END_OBJECT:
+			case END_ARRAY:
+				val = dataStack.pop();
 				break;
-
-			case COLON:
-				if(token != Token.COLON)
-					throw new ParseException("Missing ':' after the key '" + dataStack.peek() + "'", lexer.offset);
+			case END_DOCUMENT:
+				return null;
+			default:
+				val = reader.getValue();
 				break;
+			}
 
-			case OPEN_OBJECT:
-				dataStack.push(new LinkedHashMap<String, Object>());
-				if(token != Token.CLOSE_BRACE)
-				{
-					readerStateStack.push(ReaderState.COMMA_OBJECT);
-					readerStateStack.push(ReaderState.STORE_IN_OBJECT);
-					readerStateStack.push(ReaderState.VALUE);
-					readerStateStack.push(ReaderState.COLON);
-					readerStateStack.push(ReaderState.KEY);
-					skipLexer = true;
-				}
-				break;
+			if(dataStack.isEmpty())
+			{
+				// Valeur racine, le document doit être terminé
+				reader.nextEvent();
+				return val;
+			}
+			store(dataStack, val, reader);
+		}
+	}
 
-			case OPEN_ARRAY:
-				dataStack.push(new ArrayList<Object>());
-				if(token != Token.CLOSE_RBRACKET)
-				{
-					readerStateStack.push(ReaderState.COMMA_ARRAY);
-					readerStateStack.push(ReaderState.STORE_IN_ARRAY);
-					readerStateStack.push(ReaderState.VALUE);
-					skipLexer = true;
-				}
-				break;
+	@SuppressWarnings("unchecked")
+	private void store(Stack<Object> dataStack, Object val, EventReader reader) throws ParseException
+	{
+		Object top = dataStack.peek();
+		if(top instanceof String)
+		{
+			String key = (String) dataStack.pop();
+			Map<String, Object> h = (Map<String, Object>) dataStack.peek();
+			if(h.containsKey(key))
+				throw new ParseException("Key '" + key + "' already exists", reader.getErrorOffset());
+			h.put(key, val);
+		}
+		else
+			((List<Object>) top).add(val);
+	}
 
-			case COMMA_OBJECT:
-				if(token == Token.COMMA)
-				{
-					readerStateStack.push(ReaderState.COMMA_OBJECT);
-					readerStateStack.push(ReaderState.STORE_IN_OBJECT);
-					readerStateStack.push(ReaderState.VALUE);
-					readerStateStack.push(ReaderState.COLON);
-					readerStateStack.push(ReaderState.KEY);
-				}
-				else if(token != Token.CLOSE_BRACE)
-					throw new ParseException("Expected ',' or '}'", lexer.offset);
-				break;
+	/**
+	 * Streaming read : only the values under a path matched by the filter are
+	 * built, so the memory used is bounded by the depth of the document and the
+	 * size of the matched values. Duplicated keys are only detected in the built
+	 * values.
+	 * 
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public <S> void readJsonStream(InputStream jsonStream, IJsonPathFilter<S> filter) throws ParseException, IOException
+	{
+		readJson(newEventReader(jsonStream), filter);
+	}
 
-			case COMMA_ARRAY:
-				if(token == Token.COMMA)
-				{
-					readerStateStack.push(ReaderState.COMMA_ARRAY);
-					readerStateStack.push(ReaderState.STORE_IN_ARRAY);
-					readerStateStack.push(ReaderState.VALUE);
-				}
-				else if(token != Token.CLOSE_RBRACKET)
-					throw new ParseException("Expected ',' or ']'", lexer.offset);
-				break;
+	/**
+	 * Streaming read of the file through memory mapped chunks
+	 * 
+	 * @see #readJsonStream(InputStream, IJsonPathFilter)
+	 */
+	public <S> void readJsonStream(Path jsonFile, IJsonPathFilter<S> filter) throws ParseException, IOException
+	{
+		try(EventReader reader = newEventReader(jsonFile))
+		{
+			readJson(reader, filter);
+		}
+	}
 
-			case STORE_IN_OBJECT:
-				val = dataStack.pop();
-				key = (String) dataStack.pop();
-				Map<String, Object> h = ((Map<String, Object>) dataStack.peek());
-				if(h.containsKey(key))
-					throw new ParseException("Key '" + key + "' already exists", lexer.offset);
-				h.put(key, val);
-				skipLexer = true;
-				break;
+	/**
+	 * Streaming read of the channel from its current position through memory
+	 * mapped chunks, the channel is not closed
+	 * 
+	 * @see #readJsonStream(InputStream, IJsonPathFilter)
+	 */
+	public <S> void readJsonStream(FileChannel jsonChannel, IJsonPathFilter<S> filter)
+			throws ParseException, IOException
+	{
+		readJson(newEventReader(jsonChannel), filter);
+	}
 
-			case STORE_IN_ARRAY:
-				val = dataStack.pop();
-				((List<Object>) dataStack.peek()).add(val);
-				skipLexer = true;
+	private <S> void readJson(EventReader reader, IJsonPathFilter<S> filter) throws ParseException, IOException
+	{
+		// Pour chaque conteneur ouvert : état du filtre (null si aucune
+		// correspondance n'est possible), reconnu, objet ou tableau
+		Stack<S> filterStack = new Stack<S>();
+		ArrayDeque<Boolean> matchedStack = new ArrayDeque<Boolean>();
+		ArrayDeque<Boolean> objectStack = new ArrayDeque<Boolean>();
+		// Conteneurs construits, chacun précédé de sa clé dans un objet construit
+		Stack<Object> dataStack = new Stack<Object>();
+		ArrayDeque<String> path = new ArrayDeque<String>();
+		// Nombre de valeurs reconnues en cours de construction
+		int building = 0;
+		// Les symboles ne sont transmis que si le filtre partage la table du parseur
+		boolean withSymbols = symbols != null && filter.getSymbols() == symbols;
+		// Le document ne doit pas faire grossir une table partagée
+		reader.intern = false;
+
+		// État et reconnaissance de la prochaine valeur
+		S valueState = filter.getInitialState();
+		boolean valueMatched = false;
+
+		boolean matched;
+		Object val;
+		JsonEvent event;
+		while((event = reader.nextEvent()) != JsonEvent.END_DOCUMENT)
+		{
+			switch(event)
+			{
+			case KEY:
+				String key = reader.getString();
+				S objectState = filterStack.peek();
+				valueState = objectState == null ? null
+						: filter.nextState(objectState, key, withSymbols ? reader.getSymbol() : SymbolTable.NO_SYMBOL);
+				valueMatched = valueState != null && filter.isMatch(valueState);
+				path.addLast(key);
+				if(building > 0)
+					dataStack.push(key);
+				continue;
+
+			case START_OBJECT:
+			case START_ARRAY:
+				if(valueMatched)
+					building++;
+				filterStack.push(valueState);
+				matchedStack.push(valueMatched);
+				objectStack.push(event == JsonEvent.START_OBJECT);
+				if(building > 0)
+					dataStack.push(event == JsonEvent.START_OBJECT ? new LinkedHashMap<String, Object>()
+							: new ArrayList<Object>());
+				// Les éléments d'un tableau sont au même chemin que le tableau
+				valueMatched = false;
+				continue;
+
+			case END_OBJECT:
+			case END_ARRAY:
+				filterStack.pop();
+				objectStack.pop();
+				matched = matchedStack.pop();
+				val = building > 0 ? dataStack.pop() : null;
 				break;
 
-			case END:
-				if(token == Token.END)
-					return datas.get(ROOT_KEY);
-				throw new ParseException("Invalid Json stream", lexer.offset);
-
 			default:
-				throw new ParseException("An unknown error occured...", lexer.offset);
+				matched = valueMatched;
+				val = building > 0 || matched ? reader.getValue() : null;
+				if(matched)
+					building++;
+				break;
+			}
+
+			// Fin d'une valeur
+			if(matched)
+			{
+				filter.match(String.join(".", path), val);
+				building--;
+			}
+			// Le conteneur parent est lui aussi construit
+			if(building > 0)
+				store(dataStack, val, reader);
+			if(!objectStack.isEmpty())
+			{
+				if(objectStack.peek())
+					path.removeLast();
+				else
+					valueState = filterStack.peek();
 			}
+			valueMatched = false;
 		}
 	}
 }
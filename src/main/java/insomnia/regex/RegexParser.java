@@ -2,9 +2,14 @@ package insomnia.regex;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.util.ArrayDeque;
 
+import insomnia.io.MappedInputStream;
+
 import insomnia.regex.element.Const;
 import insomnia.regex.element.IElement;
 import insomnia.regex.element.Key;
@@ -242,6 +247,26 @@ public class RegexParser
 		return e;
 	}
 
+	/**
+	 * Read the file through memory mapped chunks
+	 */
+	public IElement readRegexStream(Path regexFile) throws IOException, ParseException
+	{
+		try(FileChannel channel = FileChannel.open(regexFile, StandardOpenOption.READ))
+		{
+			return readRegexStream(channel);
+		}
+	}
+
+	/**
+	 * Read the channel from its current position through memory mapped chunks,
+	 * the channel is not closed
+	 */
+	public IElement readRegexStream(FileChannel regexChannel) throws IOException, ParseException
+	{
+		return readRegexStream(new MappedInputStream(regexChannel));
+	}
+
 	public IElement readRegexStream(InputStream regexStream) throws IOException, ParseException
 	{
 		Lexer lexer = new Lexer(regexStream);
@@ -0,0 +1,105 @@
+package insomnia.regex.automaton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import insomnia.automaton.state.IState;
+import insomnia.json.IJsonPathFilter;
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Filter of a streaming json read following the key paths with a cursor of
+ * the automaton. The state of a path is the epsilon closed set of the states
+ * of the automaton it reaches, so the automaton need not be deterministic.
+ * With a parser sharing the symbol table of the automaton, the keys are
+ * compared to the words of the edges by symbol.
+ * A matcher holds a cursor and must not be shared between threads.
+ */
+public class JsonStreamMatcher implements IJsonPathFilter<List<IState<String>>>
+{
+	private final RegexAutomaton.Cursor cursor;
+	private final SymbolTable symbols;
+	private final BiConsumer<String, Object> handler;
+	private final List<IState<String>> initialState;
+
+	/**
+	 * @param handler receives each matched path with its value
+	 */
+	public JsonStreamMatcher(RegexAutomaton automaton, BiConsumer<String, Object> handler)
+	{
+		this.cursor = automaton.newCursor();
+		symbols = automaton.getSymbols();
+		this.handler = handler;
+		initialState = epsilonClosure(automaton.getInitialStates());
+	}
+
+	private List<IState<String>> epsilonClosure(List<IState<String>> states)
+	{
+		IdentityHashMap<IState<String>, Boolean> visited = new IdentityHashMap<>();
+		List<IState<String>> closure = new ArrayList<>();
+		ArrayDeque<IState<String>> stack = new ArrayDeque<>(states);
+		while(!stack.isEmpty())
+		{
+			IState<String> state = stack.pop();
+			if(visited.put(state, Boolean.TRUE) != null)
+				continue;
+			closure.add(state);
+			cursor.goToState(state);
+			stack.addAll(cursor.nextEpsilonStates());
+		}
+		return Collections.unmodifiableList(closure);
+	}
+
+	@Override
+	public List<IState<String>> getInitialState()
+	{
+		return initialState;
+	}
+
+	@Override
+	public List<IState<String>> nextState(List<IState<String>> states, String key)
+	{
+		return nextState(states, key, SymbolTable.NO_SYMBOL);
+	}
+
+	@Override
+	public List<IState<String>> nextState(List<IState<String>> states, String key, int symbol)
+	{
+		List<IState<String>> nexts = new ArrayList<>();
+		for(IState<String> state : states)
+		{
+			cursor.goToState(state);
+			nexts.addAll(cursor.nextStates(key, symbol));
+		}
+		if(nexts.isEmpty())
+			return null;
+		return epsilonClosure(nexts);
+	}
+
+	@Override
+	public SymbolTable getSymbols()
+	{
+		return symbols;
+	}
+
+	@Override
+	public boolean isMatch(List<IState<String>> states)
+	{
+		for(IState<String> state : states)
+		{
+			if(state.isFinal())
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void match(String path, Object value)
+	{
+		handler.accept(path, value);
+	}
+}
@@ -0,0 +1,63 @@
+package insomnia.regex.automaton;
+
+import java.util.List;
+
+import insomnia.automaton.IAutomaton;
+
+/**
+ * Deterministic automaton of a union of patterns, a single walk of a path
+ * gives all the patterns it matches.
+ */
+public final class MultiRegexAutomaton implements IAutomaton<String>
+{
+	private static final int[] NO_PATTERN = new int[0];
+
+	private final TableRegexAutomaton table;
+	private final int patternsCount;
+
+	protected MultiRegexAutomaton(TableRegexAutomaton table, int patternsCount)
+	{
+		this.table = table;
+		this.patternsCount = patternsCount;
+	}
+
+	/**
+	 * @return true if at least one pattern matches
+	 */
+	@Override
+	public boolean run(List<String> elements)
+	{
+		return match(elements).length > 0;
+	}
+
+	/**
+	 * @return the sorted ids of the patterns matching the path
+	 */
+	public int[] match(List<String> elements)
+	{
+		int state = table.getInitialState();
+		for(String element : elements)
+		{
+			state = table.nextState(state, element);
+			if(state == TableRegexAutomaton.NO_STATE)
+				return NO_PATTERN;
+		}
+		return table.getPatternIds(state).clone();
+	}
+
+	public int getPatternsCount()
+	{
+		return patternsCount;
+	}
+
+	public TableRegexAutomaton getTable()
+	{
+		return table;
+	}
+
+	@Override
+	public String toString()
+	{
+		return table.toString();
+	}
+}
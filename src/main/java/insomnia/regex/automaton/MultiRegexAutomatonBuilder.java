@@ -0,0 +1,55 @@
+package insomnia.regex.automaton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
+import insomnia.regex.element.IElement;
+
+/**
+ * Builder of one automaton recognizing many patterns at once.
+ * The patterns are identified by their index of addition.
+ */
+public class MultiRegexAutomatonBuilder
+{
+	private List<IElement> patterns;
+
+	public MultiRegexAutomatonBuilder()
+	{
+		patterns = new ArrayList<>();
+	}
+
+	public MultiRegexAutomatonBuilder(List<IElement> patterns)
+	{
+		this.patterns = new ArrayList<>(patterns);
+	}
+
+	/**
+	 * @return the id of the pattern
+	 */
+	public int addPattern(IElement pattern)
+	{
+		patterns.add(pattern);
+		return patterns.size() - 1;
+	}
+
+	public int getPatternsCount()
+	{
+		return patterns.size();
+	}
+
+	/**
+	 * Build the minimal deterministic automaton of the union of the patterns.
+	 * The regex of the patterns may overlap, a key matching several of them
+	 * leads to the union of their states.
+	 * 
+	 * @throws BuilderException if a pattern can't be built
+	 */
+	public MultiRegexAutomaton build() throws BuilderException, AutomatonException
+	{
+		RegexAutomatonBuilder builder = new RegexAutomatonBuilder(patterns);
+		builder.minimize();
+		return new MultiRegexAutomaton(new TableRegexAutomaton(builder), patterns.size());
+	}
+}
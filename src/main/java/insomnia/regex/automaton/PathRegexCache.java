@@ -0,0 +1,278 @@
+package insomnia.regex.automaton;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.regex.RegexParser;
+import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
+
+/**
+ * Cache of the deterministic automata of path regexs, keyed by the normalized
+ * regex. The automata are immutable and shared between threads.
+ * The cache is bounded, the evicted entry is the least recently used (LRU) or
+ * the least used (LFU). A regex is compiled by a single thread at a time, the
+ * other threads asking for it wait for its automaton.
+ */
+public class PathRegexCache
+{
+	public static final int DEFAULT_CAPACITY = 256;
+
+	public enum Eviction
+	{
+		LRU, LFU;
+	}
+
+	private final class Entry
+	{
+		final Object value;
+		long uses;
+
+		Entry(RegexAutomaton automaton)
+		{
+			value = weakValues ? new WeakReference<>(automaton) : automaton;
+			uses = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		RegexAutomaton get()
+		{
+			if(weakValues)
+				return ((WeakReference<RegexAutomaton>) value).get();
+			return (RegexAutomaton) value;
+		}
+	}
+
+	private final int capacity;
+	private final Eviction eviction;
+	private final boolean weakValues;
+
+	// Ordre d'accès : la première entrée est la moins récemment utilisée
+	private final LinkedHashMap<String, Entry> entries;
+	private final ConcurrentHashMap<String, FutureTask<RegexAutomaton>> compiling;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	public PathRegexCache()
+	{
+		this(DEFAULT_CAPACITY, Eviction.LRU, false);
+	}
+
+	/**
+	 * @param weakValues if true an automaton used by nobody else can be
+	 *                   collected
+	 */
+	public PathRegexCache(int capacity, Eviction eviction, boolean weakValues)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		this.capacity = capacity;
+		this.eviction = eviction;
+		this.weakValues = weakValues;
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		compiling = new ConcurrentHashMap<>();
+		hits = new LongAdder();
+		misses = new LongAdder();
+		evictions = new LongAdder();
+	}
+
+	/**
+	 * The regex language has no blank, only the surrounding blanks are removed
+	 */
+	public static String normalize(String regex)
+	{
+		return regex.trim();
+	}
+
+	/**
+	 * @return the deterministic automaton of the regex, compiled at the first
+	 *         call
+	 */
+	public RegexAutomaton get(String regex) throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		String key = normalize(regex);
+		RegexAutomaton automaton = lookup(key);
+		if(automaton != null)
+		{
+			hits.increment();
+			return automaton;
+		}
+
+		FutureTask<RegexAutomaton> task = new FutureTask<>(() -> compile(key));
+		FutureTask<RegexAutomaton> running = compiling.putIfAbsent(key, task);
+		if(running == null)
+		{
+			running = task;
+			try
+			{
+				// La compilation a pu se terminer entre la recherche et la réservation
+				automaton = lookup(key);
+				if(automaton != null)
+				{
+					hits.increment();
+					return automaton;
+				}
+				misses.increment();
+				task.run();
+				automaton = get(task);
+				store(key, automaton);
+				return automaton;
+			}
+			finally
+			{
+				compiling.remove(key, task);
+			}
+		}
+		// Compilation en cours dans un autre thread
+		hits.increment();
+		return get(running);
+	}
+
+	private static RegexAutomaton compile(String regex)
+			throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		return new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes(StandardCharsets.UTF_8))))
+						.determinize().build();
+	}
+
+	private static RegexAutomaton get(FutureTask<RegexAutomaton> task)
+			throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new AutomatonException("Interrupted while waiting for the compilation");
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof ParseException)
+				throw (ParseException) cause;
+			if(cause instanceof AutomatonException)
+				throw (AutomatonException) cause;
+			if(cause instanceof BuilderException)
+				throw (BuilderException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new AutomatonException(cause.getMessage(), cause);
+		}
+	}
+
+	private RegexAutomaton lookup(String key)
+	{
+		synchronized(entries)
+		{
+			Entry entry = entries.get(key);
+			if(entry == null)
+				return null;
+			RegexAutomaton automaton = entry.get();
+			if(automaton == null)
+				// Valeur faible récupérée par le ramasse-miettes
+				entries.remove(key);
+			else
+				entry.uses++;
+			return automaton;
+		}
+	}
+
+	private void store(String key, RegexAutomaton automaton)
+	{
+		synchronized(entries)
+		{
+			entries.put(key, new Entry(automaton));
+			while(entries.size() > capacity)
+			{
+				entries.remove(victim(key));
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * @param added entry just added, it is never the victim
+	 */
+	private String victim(String added)
+	{
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		Map.Entry<String, Entry> victim = it.next();
+		if(eviction == Eviction.LFU)
+		{
+			// À égalité d'utilisations, la moins récemment utilisée
+			while(it.hasNext())
+			{
+				Map.Entry<String, Entry> entry = it.next();
+				if(!entry.getKey().equals(added) && entry.getValue().uses < victim.getValue().uses)
+					victim = entry;
+			}
+		}
+		return victim.getKey();
+	}
+
+	public int size()
+	{
+		synchronized(entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public void clear()
+	{
+		synchronized(entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+		s.append("PathRegexCache ").append(eviction).append(weakValues ? " weak" : "");
+		s.append(" : ").append(size()).append("/").append(capacity);
+		s.append(", hits ").append(getHits()).append(", misses ").append(getMisses());
+		s.append(", evictions ").append(getEvictions());
+		return s.toString();
+	}
+}
@@ -1,47 +1,201 @@
 package insomnia.regex.automaton;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import insomnia.automaton.AutomatonException;
+import insomnia.automaton.IAutomaton;
 import insomnia.automaton.IPAutomaton;
+import insomnia.automaton.algorithm.BitSetPValidation;
 import insomnia.automaton.algorithm.DeterministicPValidation;
 import insomnia.automaton.algorithm.IPValidation;
-import insomnia.automaton.algorithm.NonDeterministicPValidation;
 import insomnia.automaton.edge.EdgeEpsilon;
 import insomnia.automaton.edge.EdgeRegex;
 import insomnia.automaton.edge.EdgeStringEqual;
 import insomnia.automaton.edge.IEdge;
+import insomnia.automaton.edge.MatchCache;
 import insomnia.automaton.state.IState;
 import insomnia.automaton.state.State;
+import insomnia.json.JsonParser;
 import insomnia.regex.automaton.RegexAutomatonBuilder.EdgeData;
 import insomnia.summary.ISummary;
-
-public final class RegexAutomaton implements IPAutomaton<String>
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Compiled automaton, immutable once built so that it can be shared between
+ * threads. The current state of a walk is held by a {@link Cursor}.
+ * A deterministic automaton with several regex edges on a state is run by a
+ * {@link TableRegexAutomaton} : a key matching several regex leads to a single
+ * combined state.
+ */
+public final class RegexAutomaton implements IAutomaton<String>
 {
-	private boolean synchronous;
-	private boolean deterministic;
-	private IPValidation<String> validator;
-	private IState<String> initialState;
-	private IState<String> currentState;
-	private List<IState<String>> finalStates;
-	private List<IState<String>> states;
+	public static final int PARALLEL_THRESHOLD = 256;
+
+	private final boolean synchronous;
+	private final boolean deterministic;
+	private final IPValidation<String> validator;
+	private final IState<String> initialState;
+	private final List<IState<String>> finalStates;
+	private final List<IState<String>> states;
+	private final Map<Integer, IState<String>> statesById;
+	private final SymbolTable symbols;
+	// Produit avec les résumés, construit à la première requête et partagé
+	private volatile SummaryIntersection intersection;
+
+	/**
+	 * Lightweight view of the automaton holding the current state of one walk.
+	 * A cursor must not be shared between threads.
+	 */
+	public final class Cursor implements IPAutomaton<String>
+	{
+		private IState<String> currentState;
+
+		private Cursor()
+		{
+			currentState = initialState;
+		}
+
+		@Override
+		public boolean run(List<String> path) throws AutomatonException
+		{
+			return validator.test(this, path);
+		}
+
+		@Override
+		public boolean isDeterministic()
+		{
+			return deterministic;
+		}
+
+		@Override
+		public boolean isSynchronous()
+		{
+			return synchronous;
+		}
+
+		@Override
+		public List<IState<String>> nextStates(String word)
+		{
+			List<IState<String>> nexts = new ArrayList<>();
+
+			for(IEdge<String> edge : currentState)
+			{
+				if(!(edge instanceof EdgeEpsilon) && edge.isValid(word))
+					nexts.add(edge.getChild());
+			}
+
+			return nexts;
+		}
+
+		/**
+		 * Same as {@link #nextStates(String)}, the words of the edges are compared
+		 * to the symbol of the word
+		 * 
+		 * @param symbol symbol of the word in {@link RegexAutomaton#getSymbols()}
+		 *               or {@link SymbolTable#NO_SYMBOL}
+		 */
+		public List<IState<String>> nextStates(String word, int symbol)
+		{
+			List<IState<String>> nexts = new ArrayList<>();
+
+			for(IEdge<String> edge : currentState)
+			{
+				if(edge instanceof EdgeEpsilon)
+					continue;
+				boolean valid = edge instanceof EdgeStringEqual ? ((EdgeStringEqual) edge).isValid(word, symbol)
+						: edge.isValid(word);
+				if(valid)
+					nexts.add(edge.getChild());
+			}
+
+			return nexts;
+		}
+
+		@Override
+		public List<IState<String>> nextEpsilonStates()
+		{
+			List<IState<String>> nexts = new ArrayList<>();
+
+			for(IEdge<String> edge : currentState)
+			{
+				if(edge instanceof EdgeEpsilon)
+					nexts.add(edge.getChild());
+			}
+
+			return nexts;
+		}
+
+		@Override
+		public List<IState<String>> getInitialStates()
+		{
+			return RegexAutomaton.this.getInitialStates();
+		}
+
+		@Override
+		public List<IState<String>> getFinalStates()
+		{
+			return finalStates;
+		}
+
+		@Override
+		public IState<String> getCurrentState()
+		{
+			return currentState;
+		}
+
+		@Override
+		public void goToState(IState<String> state)
+		{
+			currentState = state;
+		}
+	}
 
 	protected RegexAutomaton(RegexAutomatonBuilder b) throws AutomatonException
 	{
-		states = new ArrayList<>();
-		finalStates = new ArrayList<>();
-		currentState = null;
+		this(b, BitSetPValidation::new);
+	}
+
+	/**
+	 * @param nonDeterministicValidation builds the validation used if the
+	 *                                   automaton is not deterministic from its
+	 *                                   initial state
+	 */
+	protected RegexAutomaton(RegexAutomatonBuilder b,
+			Function<IState<String>, IPValidation<String>> nonDeterministicValidation) throws AutomatonException
+	{
+		List<IState<String>> states = new ArrayList<>();
+		List<IState<String>> finalStates = new ArrayList<>();
+		IState<String> initialState = null;
+		statesById = new HashMap<>();
+		symbols = b.getSymbols();
 
 		HashMap<Integer, HashMap<String, List<Integer>>> stateEedges = new HashMap<>();
+		boolean overlappingRegex = false;
 
 		// Ajout des états
-		for(int id : b.states)
+		for(int id = b.states.nextSetBit(0); id >= 0; id = b.states.nextSetBit(id + 1))
 		{
 			boolean isInitial = b.initialState == id;
-			boolean isFinal = b.finalState.contains(id);
+			boolean isFinal = b.finalState.get(id);
 			State state = new State(id, isInitial, isFinal);
 			
 			if(isInitial)
@@ -50,23 +204,29 @@ public final class RegexAutomaton implements IPAutomaton<String>
 				finalStates.add(state);
 
 			states.add(state);
+			statesById.put(id, state);
 		}
 		// Ajout des arcs
-		for(Map.Entry<Integer, ArrayList<EdgeData>> entry : b.edges.entrySet())
+		for(int startId = 0; startId < b.edges.size(); startId++)
 		{
-			int startId = entry.getKey();
+			ArrayList<EdgeData> startEdges = b.edges.get(startId);
+			if(startEdges == null)
+				continue;
 			State startState = (State) getState(startId);
 			ArrayList<EdgeRegex> regexEdges = new ArrayList<>();
 			HashMap<String, List<Integer>> Eedges = new HashMap<>();
 
 			// Pour chaque arc dans le builder
-			for(EdgeData d : entry.getValue())
+			for(EdgeData d : startEdges)
 			{
 				State endState = (State) getState(d.endState);
 				// Si c'est une transition labelée
 				if(d.type == EdgeData.Type.STRING_EQUALS)
 				{
-					startState.add(new EdgeStringEqual(startState, endState, d.str));
+					if(symbols == null)
+						startState.add(new EdgeStringEqual(startState, endState, d.str));
+					else
+						startState.add(new EdgeStringEqual(startState, endState, symbols.canonical(d.str), symbols.intern(d.str)));
 
 					List<Integer> l = Eedges.get(d.str);
 					if(l == null)
@@ -91,16 +251,23 @@ public final class RegexAutomaton implements IPAutomaton<String>
 				}
 				// Si c'est une regex transition
 				else if(d.type == EdgeData.Type.REGEX)
-					regexEdges.add(new EdgeRegex(startState, endState, d.str));
+					regexEdges.add(new EdgeRegex(startState, endState, d.str, b.getMatchCacheCapacity()));
 				else
 					throw new AutomatonException("Invalid edge type : " + d.type);
 			}
 			startState.addAll(regexEdges);
 			stateEedges.put(startId, Eedges);
+			// Plusieurs regex d'un même état peuvent valider une même clé
+			if(regexEdges.size() > 1)
+				overlappingRegex = true;
 		}
 
-		deterministic = true;
-		synchronous = true;
+		this.states = Collections.unmodifiableList(states);
+		this.finalStates = Collections.unmodifiableList(finalStates);
+		this.initialState = initialState;
+
+		boolean deterministic = true;
+		boolean synchronous = true;
 
 		// Vérification de la synchronicité
 		loop:
@@ -128,113 +295,236 @@ public final class RegexAutomaton implements IPAutomaton<String>
 				}
 			}
 		}
+		// Une epsilon transition n'est déterministe que si elle est la seule
+		// transition de son état
+		for(IState<String> state : states)
+		{
+			if(state.size() > 1 && state.stream().anyMatch(e -> e instanceof EdgeEpsilon))
+			{
+				deterministic = false;
+				break;
+			}
+		}
+
+		// Plusieurs regex d'un même état peuvent valider une même clé : la marche
+		// passe par les états combinés de la table, construits à la demande
+		if(overlappingRegex && !synchronous)
+			deterministic = false;
 
 		// Adaptation de l'algorithme de validation en fonction du déterminisme
-		if(deterministic)
+		if(deterministic && overlappingRegex)
+		{
+			TableRegexAutomaton table = new TableRegexAutomaton(b);
+			validator = (automaton, elements) -> table.run(elements);
+		}
+		else if(deterministic)
 			validator = new DeterministicPValidation<String>();
 		else
-			validator = new NonDeterministicPValidation<String>();
+			validator = nonDeterministicValidation.apply(initialState);
 
+		this.deterministic = deterministic;
+		this.synchronous = synchronous;
+	}
+
+	/**
+	 * @return a new cursor on the initial state
+	 */
+	public Cursor newCursor()
+	{
+		return new Cursor();
 	}
 
 	@Override
 	public boolean run(List<String> path) throws AutomatonException
 	{
-		return validator.test(this, path);
+		return validator.test(newCursor(), path);
 	}
 
-	@Override
 	public boolean isDeterministic()
 	{
 		return deterministic;
 	}
 
-	@Override
 	public boolean isSynchronous()
 	{
 		return synchronous;
 	}
 
-	@Override
-	public List<IState<String>> nextStates(String word)
+	/**
+	 * @return the table of the words of the edges or null
+	 */
+	public SymbolTable getSymbols()
 	{
-		List<IState<String>> nexts = new ArrayList<>();
-
-		for(IEdge<String> edge : currentState)
-		{
-			if(!(edge instanceof EdgeEpsilon) && edge.isValid(word))
-				nexts.add(edge.getChild());
-		}
-
-		return nexts;
+		return symbols;
 	}
 
-	@Override
-	public List<IState<String>> nextEpsilonStates()
+	public IPValidation<String> getValidator()
 	{
-		List<IState<String>> nexts = new ArrayList<>();
+		return validator;
+	}
 
-		for(IEdge<String> edge : currentState)
+	/**
+	 * @return the caches of the regex edges, empty if the builder didn't ask for
+	 *         them
+	 */
+	public List<MatchCache> getMatchCaches()
+	{
+		List<MatchCache> caches = new ArrayList<>();
+		for(IState<String> state : states)
 		{
-			if(edge instanceof EdgeEpsilon)
-				nexts.add(edge.getChild());
+			for(IEdge<String> edge : state)
+			{
+				if(edge instanceof EdgeRegex && ((EdgeRegex) edge).getMatchCache() != null)
+					caches.add(((EdgeRegex) edge).getMatchCache());
+			}
 		}
-
-		return nexts;
+		return caches;
 	}
 
-	@Override
 	public List<IState<String>> getFinalStates()
 	{
 		return finalStates;
 	}
 
-	@Override
 	public List<IState<String>> getInitialStates()
 	{
-		List<IState<String>> states_list = new ArrayList<>();
-		states_list.add(initialState);
-		return states_list;
+		return Collections.singletonList(initialState);
 	}
 
-	@Override
-	public IState<String> getCurrentState()
+	private IState<String> getState(int id) throws AutomatonException
 	{
-		return currentState;
+		IState<String> state = statesById.get(id);
+		if(state == null)
+			throw new AutomatonException("State '" + id + "' not found");
+		return state;
 	}
 
-	@Override
-	public void goToState(IState<String> state)
+	// Renvoie l'état atteint depuis state par la première transition valide, ou null
+	private static IState<String> stepForward(IState<String> state, String word)
 	{
-		currentState = state;
+		for(IEdge<String> edge : state)
+		{
+			if(edge.isValid(word))
+				return edge.getChild();
+		}
+		return null;
 	}
 
-	private IState<String> getState(int id) throws AutomatonException
+	/**
+	 * The paths of a loop free automaton with only EdgeStringEqual, walked with an
+	 * explicit stack. The paths are computed on demand.
+	 */
+	private static final class PathIterator implements Iterator<String>
 	{
-		for(IState<String> state : states)
+		private final class Frame
+		{
+			final IState<String> state;
+			final IState<String> summaryState;
+			final Iterator<IEdge<String>> edges;
+
+			Frame(IState<String> state, IState<String> summaryState)
+			{
+				this.state = state;
+				this.summaryState = summaryState;
+				edges = summaryState.iterator();
+			}
+		}
+
+		private final boolean followSummary;
+		private final ArrayDeque<Frame> stack;
+		private final Path path;
+		private String nextPath;
+
+		/**
+		 * @param followSummary true if the walk follows the edges of the summary
+		 *                      automaton, false if it follows the automaton
+		 */
+		PathIterator(IState<String> initialState, IState<String> summaryInitialState, boolean followSummary)
+		{
+			this.followSummary = followSummary;
+			stack = new ArrayDeque<>();
+			stack.push(new Frame(initialState, summaryInitialState));
+			path = new Path();
+		}
+
+		@Override
+		public boolean hasNext()
 		{
-			if(state.getId() == id)
-				return state;
+			while(nextPath == null && !stack.isEmpty())
+			{
+				Frame frame = stack.peek();
+				if(!frame.edges.hasNext())
+				{
+					stack.pop();
+					if(!stack.isEmpty())
+						path.pop();
+					continue;
+				}
+
+				IEdge<String> edge = frame.edges.next();
+				String word = ((EdgeStringEqual) edge).getWord();
+				IState<String> nextState = stepForward(frame.state, word);
+				if(nextState == null)
+					continue;
+
+				path.push(word);
+				if(nextState.isFinal())
+					nextPath = path.getPath();
+				stack.push(new Frame(nextState, followSummary ? edge.getChild() : nextState));
+			}
+			return nextPath != null;
+		}
+
+		@Override
+		public String next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			String p = nextPath;
+			nextPath = null;
+			return p;
 		}
-		throw new AutomatonException("State '" + id + "' not found");
 	}
 
-	private boolean stepForward(String word) throws AutomatonException
+	/**
+	 * Check that the paths from the state are finite and can be generated
+	 * 
+	 * @throws AutomatonException if a cycle is reachable or an edge is not an
+	 *                            EdgeStringEqual
+	 */
+	private static void checkFinitePaths(IState<String> initialState) throws AutomatonException
 	{
-		if(currentState == null)
-			throw new AutomatonException("Automaton has no current state");
-
-		IState<String> tempState = currentState;
-		currentState = null;
-		for(IEdge<String> edge : tempState)
+		// Parcours en profondeur : true tant que l'état est sur la pile
+		IdentityHashMap<IState<String>, Boolean> onStack = new IdentityHashMap<>();
+		ArrayDeque<IState<String>> states = new ArrayDeque<>();
+		ArrayDeque<Iterator<IEdge<String>>> edges = new ArrayDeque<>();
+		onStack.put(initialState, true);
+		states.push(initialState);
+		edges.push(initialState.iterator());
+		while(!states.isEmpty())
 		{
-			if(edge.isValid(word))
+			if(!edges.peek().hasNext())
 			{
-				currentState = edge.getChild();
-				return true;
+				onStack.put(states.pop(), false);
+				edges.pop();
+				continue;
 			}
+
+			IEdge<String> edge = edges.peek().next();
+			if(!(edge instanceof EdgeStringEqual))
+				throw new AutomatonException("Paths can only be generated with EdgeStringEqual, found " + edge);
+
+			IState<String> child = edge.getChild();
+			Boolean visiting = onStack.get(child);
+			if(visiting == null)
+			{
+				onStack.put(child, true);
+				states.push(child);
+				edges.push(child.iterator());
+			}
+			else if(visiting)
+				throw new AutomatonException("The automaton has a cycle through " + child + ", its paths are infinite");
 		}
-		return false;
 	}
 
 	/**
@@ -244,28 +534,42 @@ public final class RegexAutomaton implements IPAutomaton<String>
 	 * @throws AutomatonException
 	 */
 	public ArrayList<String> generatePaths() throws AutomatonException
+	{
+		return generatePaths(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return at most limit paths
+	 */
+	public ArrayList<String> generatePaths(int limit) throws AutomatonException
 	{
 		ArrayList<String> paths = new ArrayList<>();
-		generatePaths(initialState, new Path(), paths);
+		Iterator<String> it = pathsIterator();
+		while(paths.size() < limit && it.hasNext())
+			paths.add(it.next());
 		return paths;
 	}
 
-	private void generatePaths(IState<String> state, Path path, ArrayList<String> paths) throws AutomatonException
+	/**
+	 * Lazy version of {@link #generatePaths()}
+	 * 
+	 * @throws AutomatonException if the automaton has a loop or a regex
+	 */
+	public Iterator<String> pathsIterator() throws AutomatonException
 	{
-		for(IEdge<String> edge : state)
-		{
-			String word = ((EdgeStringEqual) edge).getWord();
+		checkFinitePaths(initialState);
+		return new PathIterator(initialState, initialState, false);
+	}
 
-			currentState = state;
-			if(!stepForward(word))
-				continue;
+	public Stream<String> paths() throws AutomatonException
+	{
+		return stream(pathsIterator());
+	}
 
-			path.push(word);
-			if(currentState.isFinal())
-				paths.add(path.getPath());
-			generatePaths(currentState, path, paths);
-			path.pop();
-		}
+	private static Stream<String> stream(Iterator<String> it)
+	{
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
 	}
 
 	/**
@@ -275,79 +579,105 @@ public final class RegexAutomaton implements IPAutomaton<String>
 	 */
 	public boolean existPath(ISummary summary) throws AutomatonException
 	{
-		return getPathsFromSummary(summary).size() != 0;
+		return pathsFromSummary(summary).hasNext();
 	}
 
 	/**
 	 * automatonSummary must only contain EdgeStringEqual (i.e : no regex)
 	 */
 	public ArrayList<String> getPathsFromAutomaton(RegexAutomaton automatonSummary) throws AutomatonException
+	{
+		return getPathsFromAutomaton(automatonSummary, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return at most limit paths
+	 */
+	public ArrayList<String> getPathsFromAutomaton(RegexAutomaton automatonSummary, int limit)
+			throws AutomatonException
 	{
 		ArrayList<String> queries = new ArrayList<>();
-		automatonSummary.currentState = automatonSummary.initialState;
-		getPathsFromAutomaton(automatonSummary, initialState, new Path(), queries);
+		Iterator<String> it = pathsFromAutomaton(automatonSummary);
+		while(queries.size() < limit && it.hasNext())
+			queries.add(it.next());
 		return queries;
 	}
 
-	private void getPathsFromAutomaton(RegexAutomaton automaton, IState<String> state, Path path,
-			ArrayList<String> queries) throws AutomatonException
+	/**
+	 * Lazy version of {@link #getPathsFromAutomaton(RegexAutomaton)}
+	 * 
+	 * @throws AutomatonException if automatonSummary has a loop or a regex
+	 */
+	public Iterator<String> pathsFromAutomaton(RegexAutomaton automatonSummary) throws AutomatonException
 	{
-		IState<String> currentRegexState = automaton.currentState;
-		for(IEdge<String> edge : currentRegexState)
-		{
-			String word = ((EdgeStringEqual) edge).getWord();
-
-			currentState = state;
-			if(!stepForward(word))
-				continue;
-			automaton.currentState = edge.getChild();
+		checkFinitePaths(automatonSummary.initialState);
+		return new PathIterator(initialState, automatonSummary.initialState, true);
+	}
 
-			path.push(word);
-			if(currentState.isFinal())
-				queries.add(path.getPath());
-			getPathsFromAutomaton(automaton, currentState, path, queries);
-			path.pop();
-		}
+	public Stream<String> streamPathsFromAutomaton(RegexAutomaton automatonSummary) throws AutomatonException
+	{
+		return stream(pathsFromAutomaton(automatonSummary));
 	}
 
 	public ArrayList<String> getPathsFromSummary(ISummary summary) throws AutomatonException
 	{
 		ArrayList<String> paths = new ArrayList<>();
-		getPathsFromSummary(summary.getData(), initialState, new Path(), paths);
+		pathsFromSummary(summary).forEachRemaining(paths::add);
 		return paths;
 	}
 
-	@SuppressWarnings("unchecked")
-	private void getPathsFromSummary(Object data, IState<String> state, Path path, ArrayList<String> paths)
-			throws AutomatonException
+	/**
+	 * Parallel intersection for wide summaries, a node with more than
+	 * {@link #PARALLEL_THRESHOLD} children is split between several tasks
+	 */
+	public Set<String> getPathsFromSummary(ISummary summary, ForkJoinPool pool)
 	{
-		if(data instanceof Map)
-		{
-			Map<String, Object> map = (Map<String, Object>) data;
-			for(Map.Entry<String, Object> entry : map.entrySet())
-			{
-				String word = entry.getKey();
-				currentState = state;
-				if(!stepForward(word))
-					continue;
+		return getPathsFromSummary(summary, pool, PARALLEL_THRESHOLD);
+	}
 
-				path.push(word);
-				if(currentState.isFinal())
-				{
-					String p = path.getPath();
-					if(!paths.contains(p))
-						paths.add(p);
-				}
-				getPathsFromSummary(entry.getValue(), currentState, path, paths);
-				path.pop();
-			}
-		}
-		else if(data instanceof List)
-		{
-			List<Object> array = (List<Object>) data;
-			for(Object object : array)
-				getPathsFromSummary(object, state, path, paths);
-		}
+	/**
+	 * @param threshold number of children below which a node is traversed
+	 *                  sequentially
+	 */
+	public Set<String> getPathsFromSummary(ISummary summary, ForkJoinPool pool, int threshold)
+	{
+		if(threshold < 1)
+			throw new IllegalArgumentException("The threshold must be positive");
+		return getIntersection().paths(summary, pool, threshold);
+	}
+
+	/**
+	 * Paths of the summary accepted by the automaton, computed on demand by a
+	 * traversal of the product of the summary and the automaton
+	 */
+	public Iterator<String> pathsFromSummary(ISummary summary)
+	{
+		return getIntersection().paths(summary);
+	}
+
+	/**
+	 * @return the product shared by the summary queries, its transitions are
+	 *         memoized across the queries
+	 */
+	private SummaryIntersection getIntersection()
+	{
+		SummaryIntersection i = intersection;
+		// Deux threads peuvent construire chacun un produit, le dernier est gardé
+		if(i == null)
+			intersection = i = new SummaryIntersection(initialState);
+		return i;
+	}
+
+	/**
+	 * Read a json document and give each path matched by the automaton with its
+	 * value to the handler, as soon as the value is read. The subtrees that
+	 * can't be matched are not built. The keys are looked up in the symbol table
+	 * of the automaton if it has one, the document never adds keys to it.
+	 */
+	public void matchJsonStream(InputStream jsonStream, BiConsumer<String, Object> handler)
+			throws ParseException, IOException
+	{
+		new JsonParser(symbols).readJsonStream(jsonStream, new JsonStreamMatcher(this, handler));
 	}
 
 	@Override
@@ -1,13 +1,20 @@
 package insomnia.regex.automaton;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import insomnia.automaton.AutomatonException;
+import insomnia.automaton.algorithm.LazyDFAPValidation;
 import insomnia.regex.element.Const;
 import insomnia.regex.element.IElement;
 import insomnia.regex.element.Key;
@@ -15,6 +22,7 @@ import insomnia.regex.element.MultipleElement;
 import insomnia.regex.element.OrElement;
 import insomnia.regex.element.Quantifier;
 import insomnia.regex.element.Regex;
+import insomnia.symbol.SymbolTable;
 
 public class RegexAutomatonBuilder
 {
@@ -89,19 +97,72 @@ public class RegexAutomatonBuilder
 		}
 	}
 
+	/**
+	 * Number of states of the automaton along the minimization process
+	 */
+	public static final class MinimizationStats
+	{
+		private final int initialStates;
+		private final int determinizedStates;
+		private final int minimizedStates;
+
+		private MinimizationStats(int initialStates, int determinizedStates, int minimizedStates)
+		{
+			this.initialStates = initialStates;
+			this.determinizedStates = determinizedStates;
+			this.minimizedStates = minimizedStates;
+		}
+
+		public int getInitialStates()
+		{
+			return initialStates;
+		}
+
+		public int getDeterminizedStates()
+		{
+			return determinizedStates;
+		}
+
+		public int getMinimizedStates()
+		{
+			return minimizedStates;
+		}
+
+		@Override
+		public String toString()
+		{
+			return initialStates + " -> " + determinizedStates + " -> " + minimizedStates + " states";
+		}
+	}
+
 	protected int initialState;
 	protected int junctionState;
-	protected TreeSet<Integer> finalState;
-	protected TreeSet<Integer> states;
-	protected HashMap<Integer, ArrayList<EdgeData>> edges;
+	protected BitSet finalState;
+	protected BitSet states;
+	// Arcs sortants indexés par l'état de départ, null si l'état n'en a pas
+	protected ArrayList<ArrayList<EdgeData>> edges;
+	// Motifs reconnus par chaque état final d'un automate multi-motifs, sinon null
+	protected HashMap<Integer, TreeSet<Integer>> patternIds;
+	// Arcs ajoutés par addEdge vers l'état initial, utile pendant la construction
+	private int initialInDegree;
+	private boolean isPowerset;
+	private MinimizationStats minimizationStats;
+	private int matchCacheCapacity;
+	private SymbolTable symbols;
 
 	{
 		initialState = 0;
 		junctionState = -1;
-		finalState = new TreeSet<Integer>();
-		states = new TreeSet<Integer>();
-		states.add(0);
-		edges = new HashMap<Integer, ArrayList<EdgeData>>();
+		finalState = new BitSet();
+		states = new BitSet();
+		states.set(0);
+		edges = new ArrayList<>();
+		patternIds = null;
+		initialInDegree = 0;
+		isPowerset = false;
+		minimizationStats = null;
+		matchCacheCapacity = 0;
+		symbols = null;
 	}
 
 	public RegexAutomatonBuilder(IElement elements) throws BuilderException
@@ -110,6 +171,32 @@ public class RegexAutomatonBuilder
 		recursiveConstruct(elements, this);
 	}
 
+	/**
+	 * Union of the patterns, each final state knows the indices of the
+	 * patterns it recognizes.
+	 */
+	protected RegexAutomatonBuilder(List<IElement> patterns) throws BuilderException
+	{
+		this();
+		patternIds = new HashMap<>();
+		for(int i = 0; i < patterns.size(); i++)
+		{
+			RegexAutomatonBuilder builder = new RegexAutomatonBuilder();
+			recursiveConstruct(patterns.get(i), builder);
+
+			int start = addState();
+			addEdge(initialState, start, null, EdgeData.Type.EPSILON);
+			int last = lastState();
+			mergeBuilder(start, -1, builder);
+			for(int f = builder.finalState.nextSetBit(0); f >= 0; f = builder.finalState.nextSetBit(f + 1))
+			{
+				int state = f == builder.initialState ? start : f + last;
+				finalState.set(state);
+				patternIds.computeIfAbsent(state, k -> new TreeSet<>()).add(i);
+			}
+		}
+	}
+
 	private RegexAutomatonBuilder()
 	{
 	}
@@ -121,78 +208,95 @@ public class RegexAutomatonBuilder
 		finalState = builder.finalState;
 		states = builder.states;
 		edges = builder.edges;
+		patternIds = builder.patternIds;
+		initialInDegree = builder.initialInDegree;
 	}
 
 	private void addFinalState(int end)
 	{
-		finalState.add(end);
+		finalState.set(end);
 		junctionState = end;
 	}
 
 	private void addState(int state) throws BuilderException
 	{
-		if(!states.add(state))
+		if(states.get(state))
 			throw new BuilderException("State " + state + " already in");
+		states.set(state);
 	}
 
 	private int addState()
 	{
-		int state = states.last() + 1;
-		states.add(state);
+		int state = states.length();
+		states.set(state);
 		return state;
 	}
 
-	private void addEdge(int startState, int endState, String str, EdgeData.Type type) throws BuilderException
+	private int lastState()
 	{
-		EdgeData edge = new EdgeData(startState, endState, str, type);
-		ArrayList<EdgeData> stateEdges;
-		if(edges.containsKey(startState))
-		{
-			stateEdges = edges.get(startState);
-			if(stateEdges.contains(edge))
-				throw new BuilderException("Edge " + edge + " already in");
-		}
-		else
+		return states.length() - 1;
+	}
+
+	/**
+	 * @return the edges leaving the state, null if it has none
+	 */
+	ArrayList<EdgeData> edgesOf(int state)
+	{
+		return state < edges.size() ? edges.get(state) : null;
+	}
+
+	private ArrayList<EdgeData> newEdgesOf(int state)
+	{
+		while(edges.size() <= state)
+			edges.add(null);
+		ArrayList<EdgeData> stateEdges = edges.get(state);
+		if(stateEdges == null)
 		{
-			stateEdges = new ArrayList<EdgeData>();
-			edges.put(startState, stateEdges);
+			stateEdges = new ArrayList<>();
+			edges.set(state, stateEdges);
 		}
+		return stateEdges;
+	}
+
+	private void addEdge(int startState, int endState, String str, EdgeData.Type type) throws BuilderException
+	{
+		EdgeData edge = new EdgeData(startState, endState, str, type);
+		ArrayList<EdgeData> stateEdges = newEdgesOf(startState);
+		if(stateEdges.contains(edge))
+			throw new BuilderException("Edge " + edge + " already in");
 		stateEdges.add(edge);
+		if(endState == initialState)
+			initialInDegree++;
 	}
 	
 	private void addEdge(int startState, int endState, double number) throws BuilderException
 	{
-		EdgeData edge = new EdgeData(startState, endState, number, EdgeData.Type.NUMBER);
-		ArrayList<EdgeData> stateEdges;
-		if(edges.containsKey(startState))
-			stateEdges = edges.get(startState);
-		else
-		{
-			stateEdges = new ArrayList<EdgeData>();
-			edges.put(startState, stateEdges);
-		}
-		stateEdges.add(edge);
+		newEdgesOf(startState).add(new EdgeData(startState, endState, number, EdgeData.Type.NUMBER));
+		if(endState == initialState)
+			initialInDegree++;
 	}
 
 	private int mergeBuilder(int start, int end, RegexAutomatonBuilder builder) throws BuilderException
 	{
-		int last = states.last();
-
-		// On supprime la jonction de fin du builder import�
-		if(end != -1)
-			builder.states.remove(builder.junctionState);
+		int last = lastState();
 
-		// On ajout les états en réindixant
-		for(int state : builder.states)
-			states.add(state + last);
+		// On ajoute les états en réindexant, la jonction de fin du builder importé est remplacée par end
+		BitSet builderStates = builder.states;
+		for(int state = builderStates.nextSetBit(0); state >= 0; state = builderStates.nextSetBit(state + 1))
+		{
+			if(end == -1 || state != builder.junctionState)
+				states.set(state + last);
+		}
 
 		// On ajoute les arcs en réindexant les états de début et fin
 		int startState;
 		int endState;
-		for(Map.Entry<Integer, ArrayList<EdgeData>> entry : builder.edges.entrySet())
+		for(int edgeStartState = 0; edgeStartState < builder.edges.size(); edgeStartState++)
 		{
-			int edgeStartState = entry.getKey();
-			for(EdgeData d : entry.getValue())
+			ArrayList<EdgeData> stateEdges = builder.edges.get(edgeStartState);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData d : stateEdges)
 			{
 				if(edgeStartState == builder.initialState)
 					startState = start;
@@ -208,50 +312,55 @@ public class RegexAutomatonBuilder
 				else
 					endState = d.endState + last;
 
-				addEdge(startState, endState, d.str, d.type);
+				if(d.type == EdgeData.Type.NUMBER)
+					addEdge(startState, endState, d.num);
+				else
+					addEdge(startState, endState, d.str, d.type);
 			}
 		}
 
-		// On remet la jonction de fin précédement supprimée
-		if(end != -1)
-			builder.states.add(builder.junctionState);
-
 		return end != -1 ? end : builder.junctionState + last;
 	}
 
 	public RegexAutomatonBuilder determinize()
 	{
+		int[] stack = new int[states.length()];
+		HashMap<String, Pattern> patterns = new HashMap<>();
+
 		// On parcourt tous les états de l'automate possédant des transitions
-		for(Map.Entry<Integer, ArrayList<EdgeData>> entry : edges.entrySet())
+		for(int state = 0; state < edges.size(); state++)
 		{
-			int state = entry.getKey();
-			List<EdgeData> stateEdges = entry.getValue();
+			List<EdgeData> stateEdges = edges.get(state);
+			if(stateEdges == null)
+				continue;
 			/*
 			 * Gestion des epsilon transitions
 			 */
-			// On calcule la epsilon fermeture de l'état
+			// On calcule la epsilon fermeture de l'état, privée de ce dernier
 			// puis on supprime ses epsilon transitions
-			List<Integer> closure = new ArrayList<>();
-			epsilonClosure(state, closure);
-			stateEdges.removeIf(e -> e.startState == state && e.type == EdgeData.Type.EPSILON);
+			BitSet closure = epsilonClosure(state, stack);
+			closure.clear(state);
+			stateEdges.removeIf(e -> e.type == EdgeData.Type.EPSILON);
 
 			// Pour chaque état de la epsilon fermeture
-			for(int s : closure)
+			for(int s = closure.nextSetBit(0); s >= 0; s = closure.nextSetBit(s + 1))
 			{
 				// Si cet état est final
-				if(finalState.contains(s))
+				if(finalState.get(s))
 					// L'état actuel devient final
-					finalState.add(state);
+					finalState.set(state);
 
 				// Pour chaque transition sortante de cet état
-				ArrayList<EdgeData> nextEdges = edges.get(s);
+				ArrayList<EdgeData> nextEdges = edgesOf(s);
 				if(nextEdges == null)
 					continue;
 				for(EdgeData edge : nextEdges)
 				{
 					// Si ce n'est pas une epsilon transition
-					if(edge.type != EdgeData.Type.EPSILON)
-						// On ajoute la transition à l'état actuel
+					// on ajoute la transition à l'état actuel
+					if(edge.type == EdgeData.Type.NUMBER)
+						stateEdges.add(new EdgeData(state, edge.endState, edge.num, edge.type));
+					else if(edge.type != EdgeData.Type.EPSILON)
 						stateEdges.add(new EdgeData(state, edge.endState, edge.str, edge.type));
 				}
 			}
@@ -259,28 +368,31 @@ public class RegexAutomatonBuilder
 			/*
 			 * Gestion collision entre label et label regex
 			 */
+			List<EdgeData> collisions = new ArrayList<>();
 			// Pour chaque transition sortante de l'état actuel
 			for(EdgeData edge : stateEdges)
 			{
 				// Si c'est une regex transition
 				if(edge.type == EdgeData.Type.REGEX)
 				{
+					Pattern pattern = patterns.computeIfAbsent(edge.str, Pattern::compile);
 					// Pour chaque autre transition non regex
 					for(EdgeData e : stateEdges)
 					{
 						// Si il y a collision
-						if(e.type == EdgeData.Type.STRING_EQUALS && e.str.matches(edge.str))
+						if(e.type == EdgeData.Type.STRING_EQUALS && pattern.matcher(e.str).matches())
 						{
 							// On ajoute une nouvelle transition (si elle n'existe pas déja)
 							// du noeud de départ vers le noeuds d'arrivée de la regex transition
 							// et ayant pour label celui de la collision
 							EdgeData newEdge = new EdgeData(state, edge.endState, e.str, EdgeData.Type.STRING_EQUALS);
-							if(!stateEdges.contains(newEdge))
-								stateEdges.add(newEdge);
+							if(!stateEdges.contains(newEdge) && !collisions.contains(newEdge))
+								collisions.add(newEdge);
 						}
 					}
 				}
 			}
+			stateEdges.addAll(collisions);
 		}
 
 		// Suppression des noeuds innaccessibles et de leurs arcs
@@ -289,51 +401,502 @@ public class RegexAutomatonBuilder
 		return this;
 	}
 
-	// Calcule la epsilon fermeture de l'état state, privée de ce dernier
-	private void epsilonClosure(int state, List<Integer> closure)
+	/**
+	 * Subset construction : each state of the new automaton is the epsilon
+	 * closure of a set of states of the current one. The labels are
+	 * deterministic, a label being followed by the regex it matches. The regex
+	 * labels of a state may overlap : each one leads to the state of its own
+	 * targets, and a key matching several of them goes to the union of their
+	 * states, which {@link TableRegexAutomaton} builds the first time the
+	 * combination occurs.
+	 */
+	public RegexAutomatonBuilder powerset()
 	{
-		List<EdgeData> stateEdges = edges.get(state);
-		if(stateEdges == null)
-			return;
-		for(EdgeData edge : stateEdges)
+		RegexAutomatonBuilder dfa = new RegexAutomatonBuilder();
+		if(patternIds != null)
+			dfa.patternIds = new HashMap<>();
+		HashMap<BitSet, Integer> dfaStates = new HashMap<>();
+		BitSet[] closures = new BitSet[states.length()];
+		int[] stack = new int[states.length()];
+		HashMap<String, Pattern> patterns = new HashMap<>();
+		ArrayDeque<BitSet> toVisit = new ArrayDeque<>();
+
+		BitSet initialSet = epsilonClosure(initialState, stack);
+		dfaStates.put(initialSet, dfa.initialState);
+		toVisit.add(initialSet);
+
+		while(!toVisit.isEmpty())
+		{
+			BitSet set = toVisit.poll();
+			int state = dfaStates.get(set);
+
+			// Regroupement des transitions sortantes par label
+			LinkedHashMap<String, BitSet> words = new LinkedHashMap<>();
+			LinkedHashMap<String, BitSet> regexs = new LinkedHashMap<>();
+			LinkedHashMap<Double, BitSet> numbers = new LinkedHashMap<>();
+			for(int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1))
+			{
+				if(finalState.get(s))
+				{
+					dfa.finalState.set(state);
+					if(patternIds != null)
+						dfa.patternIds.computeIfAbsent(state, k -> new TreeSet<>()).addAll(patternIds.get(s));
+				}
+
+				ArrayList<EdgeData> stateEdges = edgesOf(s);
+				if(stateEdges == null)
+					continue;
+				for(EdgeData edge : stateEdges)
+				{
+					if(edge.type == EdgeData.Type.STRING_EQUALS)
+						words.computeIfAbsent(edge.str, k -> new BitSet()).set(edge.endState);
+					else if(edge.type == EdgeData.Type.REGEX)
+						regexs.computeIfAbsent(edge.str, k -> new BitSet()).set(edge.endState);
+					else if(edge.type == EdgeData.Type.NUMBER)
+						numbers.computeIfAbsent(edge.num, k -> new BitSet()).set(edge.endState);
+				}
+			}
+
+			// Un label doit aussi suivre les regex qu'il valide
+			for(Map.Entry<String, BitSet> word : words.entrySet())
+			{
+				for(Map.Entry<String, BitSet> regex : regexs.entrySet())
+				{
+					Pattern pattern = patterns.computeIfAbsent(regex.getKey(), Pattern::compile);
+					if(pattern.matcher(word.getKey()).matches())
+						word.getValue().or(regex.getValue());
+				}
+				int end = internStateSet(word.getValue(), dfa, dfaStates, closures, stack, toVisit);
+				dfa.addPowersetEdge(new EdgeData(state, end, word.getKey(), EdgeData.Type.STRING_EQUALS));
+			}
+
+			for(Map.Entry<Double, BitSet> number : numbers.entrySet())
+			{
+				int end = internStateSet(number.getValue(), dfa, dfaStates, closures, stack, toVisit);
+				dfa.addPowersetEdge(new EdgeData(state, end, number.getKey(), EdgeData.Type.NUMBER));
+			}
+
+			// Une clé validant plusieurs regex ira vers l'union de leurs états
+			for(Map.Entry<String, BitSet> regex : regexs.entrySet())
+			{
+				int end = internStateSet(regex.getValue(), dfa, dfaStates, closures, stack, toVisit);
+				dfa.addPowersetEdge(new EdgeData(state, end, regex.getKey(), EdgeData.Type.REGEX));
+			}
+		}
+
+		copy(dfa);
+		isPowerset = true;
+		return this;
+	}
+
+	/**
+	 * Hopcroft minimization of the automaton obtained by {@link #powerset()}
+	 * (which is computed first if needed). Labels are compared syntactically,
+	 * which is sound even for overlapping regex labels : two states with the
+	 * same labels towards equivalent states recognize the same paths.
+	 */
+	public RegexAutomatonBuilder minimize()
+	{
+		int initialStates = states.cardinality();
+		if(!isPowerset)
+			powerset();
+		int determinizedStates = states.cardinality();
+
+		// Suppression des états ne menant à aucun état final
+		// ils sont tous équivalents à l'état puits implicite
+		cleanUseless();
+
+		// Indexation dense des états et des labels
+		int n = states.cardinality();
+		int[] index = new int[states.length()];
+		int[] stateOf = new int[n];
+		int i = 0;
+		for(int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1))
+		{
+			index[state] = i;
+			stateOf[i++] = state;
+		}
+
+		// Transitions entrantes de chaque état : (symbole << 32) | prédécesseur
+		HashMap<String, Integer> symbols = new HashMap<>();
+		int[] inDegrees = new int[n];
+		for(int state = 0; state < edges.size(); state++)
+		{
+			ArrayList<EdgeData> stateEdges = edges.get(state);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
+				inDegrees[index[edge.endState]]++;
+		}
+		long[][] inverse = new long[n][];
+		for(i = 0; i < n; i++)
+			inverse[i] = new long[inDegrees[i]];
+		for(int state = 0; state < edges.size(); state++)
+		{
+			ArrayList<EdgeData> stateEdges = edges.get(state);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
+			{
+				int symbol = symbols.computeIfAbsent(symbolOf(edge), k -> symbols.size());
+				int target = index[edge.endState];
+				inverse[target][--inDegrees[target]] = ((long) symbol << 32) | index[state];
+			}
+		}
+
+		// Partition initiale : états regroupés par acceptation
+		// (finaux / non finaux, ou ensemble des motifs reconnus)
+		// Chaque bloc occupe un intervalle [first, end[ du tableau elements
+		int[] elements = new int[n];
+		int[] location = new int[n];
+		int[] blockOf = new int[n];
+		int[] first = new int[n + 1];
+		int[] end = new int[n + 1];
+		int[] marked = new int[n + 1];
+		boolean[] inWaiting = new boolean[n + 1];
+		// File circulaire des séparateurs, un bloc y est au plus une fois
+		int[] waiting = new int[n + 1];
+		int waitingHead = 0;
+		int waitingSize = 0;
+		HashMap<TreeSet<Integer>, Integer> acceptances = new HashMap<>();
+		int[] acceptance = new int[n];
+		for(i = 0; i < n; i++)
+		{
+			acceptance[i] = acceptances.computeIfAbsent(acceptanceOf(stateOf[i]), k -> acceptances.size());
+			end[acceptance[i]]++;
+		}
+		int blocks = acceptances.size();
+		for(int b = 1; b < blocks; b++)
+		{
+			first[b] = end[b - 1];
+			end[b] += first[b];
+		}
+		int[] next = Arrays.copyOf(first, blocks);
+		for(i = 0; i < n; i++)
+		{
+			int pos = next[acceptance[i]]++;
+			elements[pos] = i;
+			location[i] = pos;
+		}
+		for(int b = 0; b < blocks; b++)
+		{
+			for(int j = first[b]; j < end[b]; j++)
+				blockOf[elements[j]] = b;
+			// Automate partiel : tous les blocs initiaux sont des séparateurs
+			waiting[waitingSize++] = b;
+			inWaiting[b] = true;
+		}
+
+		// Raffinement de la partition
+		int[] touched = new int[n + 1];
+		int touchedSize = 0;
+		while(waitingSize > 0)
+		{
+			int splitter = waiting[waitingHead];
+			waitingHead = (waitingHead + 1) % waiting.length;
+			waitingSize--;
+			inWaiting[splitter] = false;
+
+			// Transitions entrantes dans le séparateur triées par symbole
+			int size = 0;
+			for(int j = first[splitter]; j < end[splitter]; j++)
+				size += inverse[elements[j]].length;
+			long[] incoming = new long[size];
+			size = 0;
+			for(int j = first[splitter]; j < end[splitter]; j++)
+			{
+				long[] a = inverse[elements[j]];
+				System.arraycopy(a, 0, incoming, size, a.length);
+				size += a.length;
+			}
+			Arrays.sort(incoming);
+
+			for(int j = 0; j < size;)
+			{
+				long symbol = incoming[j] >>> 32;
+				// Marquage des prédécesseurs par ce symbole
+				for(; j < size && incoming[j] >>> 32 == symbol; j++)
+				{
+					int s = (int) incoming[j];
+					int b = blockOf[s];
+					int pos = location[s];
+					if(pos < first[b] + marked[b])
+						continue;
+					int swapPos = first[b] + marked[b];
+					int swapState = elements[swapPos];
+					elements[swapPos] = s;
+					location[s] = swapPos;
+					elements[pos] = swapState;
+					location[swapState] = pos;
+					if(marked[b]++ == 0)
+						touched[touchedSize++] = b;
+				}
+				// Découpage des blocs partiellement marqués
+				for(int t = 0; t < touchedSize; t++)
+				{
+					int b = touched[t];
+					int m = marked[b];
+					marked[b] = 0;
+					if(m == end[b] - first[b])
+						continue;
+
+					int nb = blocks++;
+					first[nb] = first[b];
+					end[nb] = first[b] + m;
+					first[b] = end[nb];
+					for(int k = first[nb]; k < end[nb]; k++)
+						blockOf[elements[k]] = nb;
+
+					int split = inWaiting[b] || m <= end[b] - first[b] ? nb : b;
+					waiting[(waitingHead + waitingSize++) % waiting.length] = split;
+					inWaiting[split] = true;
+				}
+				touchedSize = 0;
+			}
+		}
+
+		// Construction de l'automate quotient
+		RegexAutomatonBuilder min = new RegexAutomatonBuilder();
+		if(patternIds != null)
+			min.patternIds = new HashMap<>();
+		int[] newId = new int[blocks];
+		Arrays.fill(newId, -1);
+		// File des blocs dans l'ordre de leur numérotation
+		int[] toVisit = new int[blocks];
+		int visited = 0;
+		int toVisitSize = 0;
+		int initialBlock = blockOf[index[initialState]];
+		newId[initialBlock] = min.initialState;
+		toVisit[toVisitSize++] = initialBlock;
+		while(visited < toVisitSize)
+		{
+			int b = toVisit[visited++];
+			int state = stateOf[elements[first[b]]];
+			if(finalState.get(state))
+			{
+				min.finalState.set(newId[b]);
+				if(patternIds != null)
+					min.patternIds.put(newId[b], patternIds.get(state));
+			}
+
+			ArrayList<EdgeData> stateEdges = edgesOf(state);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
+			{
+				int target = blockOf[index[edge.endState]];
+				if(newId[target] == -1)
+				{
+					newId[target] = min.addState();
+					toVisit[toVisitSize++] = target;
+				}
+				EdgeData newEdge = edge.type == EdgeData.Type.NUMBER //
+						? new EdgeData(newId[b], newId[target], edge.num, edge.type) //
+						: new EdgeData(newId[b], newId[target], edge.str, edge.type);
+				min.addPowersetEdge(newEdge);
+			}
+		}
+
+		copy(min);
+		isPowerset = true;
+		minimizationStats = new MinimizationStats(initialStates, determinizedStates, states.cardinality());
+		return this;
+	}
+
+	/**
+	 * @return the state counts of the last {@link #minimize()}, or null
+	 */
+	public MinimizationStats getMinimizationStats()
+	{
+		return minimizationStats;
+	}
+
+	public int getStatesCount()
+	{
+		return states.cardinality();
+	}
+
+	private TreeSet<Integer> acceptanceOf(int state)
+	{
+		if(!finalState.get(state))
+			return new TreeSet<>();
+		if(patternIds != null)
+			return patternIds.get(state);
+		return new TreeSet<>(Collections.singleton(-1));
+	}
+
+	private static String symbolOf(EdgeData edge)
+	{
+		if(edge.type == EdgeData.Type.NUMBER)
+			return edge.type + ":" + edge.num;
+		return edge.type + ":" + edge.str;
+	}
+
+	// Supprime les états depuis lesquels aucun état final n'est accessible,
+	// l'état initial est toujours conservé
+	private void cleanUseless()
+	{
+		int size = Math.max(states.length(), finalState.length());
+
+		// Prédécesseurs de l'état s : parents[parentOffsets[s], parentOffsets[s + 1][
+		int[] parentOffsets = new int[size + 1];
+		for(ArrayList<EdgeData> stateEdges : edges)
+		{
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
+				parentOffsets[edge.endState + 1]++;
+		}
+		for(int s = 0; s < size; s++)
+			parentOffsets[s + 1] += parentOffsets[s];
+		int[] parents = new int[parentOffsets[size]];
+		int[] next = Arrays.copyOf(parentOffsets, size);
+		for(int state = 0; state < edges.size(); state++)
+		{
+			ArrayList<EdgeData> stateEdges = edges.get(state);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
+				parents[next[edge.endState]++] = state;
+		}
+
+		BitSet useful = (BitSet) finalState.clone();
+		int[] stack = new int[size];
+		int top = 0;
+		for(int f = finalState.nextSetBit(0); f >= 0; f = finalState.nextSetBit(f + 1))
+			stack[top++] = f;
+		while(top > 0)
+		{
+			int state = stack[--top];
+			for(int j = parentOffsets[state]; j < parentOffsets[state + 1]; j++)
+			{
+				int parent = parents[j];
+				if(!useful.get(parent))
+				{
+					useful.set(parent);
+					stack[top++] = parent;
+				}
+			}
+		}
+		useful.set(initialState);
+
+		states.and(useful);
+		for(int state = 0; state < edges.size(); state++)
+		{
+			ArrayList<EdgeData> stateEdges = edges.get(state);
+			if(stateEdges == null)
+				continue;
+			if(!useful.get(state))
+				edges.set(state, null);
+			else
+				stateEdges.removeIf(e -> !useful.get(e.endState));
+		}
+	}
+
+	// Renvoie l'identifiant de l'état correspondant à la fermeture de targets,
+	// en le créant si nécessaire
+	private int internStateSet(BitSet targets, RegexAutomatonBuilder dfa, HashMap<BitSet, Integer> dfaStates,
+			BitSet[] closures, int[] stack, ArrayDeque<BitSet> toVisit)
+	{
+		BitSet set = epsilonClosure(targets, closures, stack);
+		Integer id = dfaStates.get(set);
+		if(id == null)
+		{
+			id = dfa.addState();
+			dfaStates.put(set, id);
+			toVisit.add(set);
+		}
+		return id;
+	}
+
+	// Les labels sont tous distincts, pas besoin de vérifier les doublons
+	private void addPowersetEdge(EdgeData edge)
+	{
+		newEdgesOf(edge.startState).add(edge);
+	}
+
+	// Calcule la epsilon fermeture d'un ensemble d'états, ces derniers compris
+	private BitSet epsilonClosure(BitSet states, BitSet[] closures, int[] stack)
+	{
+		BitSet closure = new BitSet();
+		for(int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1))
 		{
-			// Si l'arc est une epsilon transition
-			if(edge.type == EdgeData.Type.EPSILON)
+			if(closures[state] == null)
+				closures[state] = epsilonClosure(state, stack);
+			closure.or(closures[state]);
+		}
+		return closure;
+	}
+
+	// Calcule la epsilon fermeture de l'état state, ce dernier compris
+	// stack doit avoir une case par état
+	private BitSet epsilonClosure(int state, int[] stack)
+	{
+		BitSet closure = new BitSet();
+		closure.set(state);
+		int top = 0;
+		stack[top++] = state;
+		while(top > 0)
+		{
+			List<EdgeData> stateEdges = edgesOf(stack[--top]);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
 			{
-				// On ajoute l'état pointé par la transition dans la fermeture
-				closure.add(edge.endState);
-				epsilonClosure(edge.endState, closure);
+				if(edge.type == EdgeData.Type.EPSILON && !closure.get(edge.endState))
+				{
+					closure.set(edge.endState);
+					stack[top++] = edge.endState;
+				}
 			}
 		}
+		return closure;
 	}
 
 	private void cleanInaccessible()
 	{
-		ArrayList<Integer> accessibleStates = new ArrayList<>();
-		accessibleStates.add(initialState);
-		getAccessibles(initialState, accessibleStates);
-		for(int state : states)
+		BitSet accessibles = getAccessibles(initialState);
+		for(int state = 0; state < edges.size(); state++)
 		{
-			if(!accessibleStates.contains(state))
-				edges.remove(state);
+			if(!accessibles.get(state))
+				edges.set(state, null);
 		}
-		states.removeIf(state -> !accessibleStates.contains(state));
+		states.and(accessibles);
 	}
 
-	private void getAccessibles(int state, List<Integer> accessibles)
+	// États accessibles depuis state, ce dernier compris
+	private BitSet getAccessibles(int state)
 	{
-		List<EdgeData> stateEdges = edges.get(state);
-		if(stateEdges == null)
-			return;
-		for(EdgeData edge : stateEdges)
+		BitSet accessibles = new BitSet();
+		int[] stack = new int[states.length()];
+		int top = 0;
+		accessibles.set(state);
+		stack[top++] = state;
+		while(top > 0)
 		{
-			int nextState = edge.endState;
-			if(!accessibles.contains(nextState))
+			List<EdgeData> stateEdges = edgesOf(stack[--top]);
+			if(stateEdges == null)
+				continue;
+			for(EdgeData edge : stateEdges)
 			{
-				accessibles.add(nextState);
-				getAccessibles(nextState, accessibles);
+				if(!accessibles.get(edge.endState))
+				{
+					accessibles.set(edge.endState);
+					stack[top++] = edge.endState;
+				}
 			}
 		}
+		return accessibles;
+	}
+
+	// Nouvel état initial relié à l'ancien par une epsilon transition
+	private void isolateInitialState() throws BuilderException
+	{
+		RegexAutomatonBuilder isolated = new RegexAutomatonBuilder();
+		int start = isolated.addState();
+		isolated.addEdge(isolated.initialState, start, null, EdgeData.Type.EPSILON);
+		isolated.addFinalState(isolated.mergeBuilder(start, -1, this));
+		copy(isolated);
 	}
 
 	private void recursiveConstruct(IElement element, RegexAutomatonBuilder builder) throws BuilderException
@@ -399,6 +962,11 @@ public class RegexAutomatonBuilder
 
 		if(inf != 1 || sup != 1)
 		{
+			// Les epsilon transitions de contournement ne doivent pas partir d'un état
+			// sur lequel le motif boucle
+			if(builder.initialInDegree > 0)
+				builder.isolateInitialState();
+
 			RegexAutomatonBuilder quantifiedBuilder = new RegexAutomatonBuilder();
 			int start = 0;
 			for(int i = 0; i < inf; i++)
@@ -411,7 +979,8 @@ public class RegexAutomatonBuilder
 				quantifiedBuilder.addEdge(start, end, null, EdgeData.Type.EPSILON);
 				start = end;
 			}
-			else
+			// [n, n] : pas de copie optionnelle
+			else if(sup > inf)
 			{
 				int end = quantifiedBuilder.addState();
 				for(int i = 0; i < sup - inf - 1; i++)
@@ -427,25 +996,89 @@ public class RegexAutomatonBuilder
 		}
 	}
 
+	/**
+	 * Cache the results of the regex edges of the built automata
+	 * 
+	 * @param capacity maximum number of results cached by each edge, 0 for no
+	 *                 cache
+	 */
+	public RegexAutomatonBuilder cacheMatches(int capacity)
+	{
+		if(capacity < 0)
+			throw new IllegalArgumentException("The capacity must not be negative");
+		matchCacheCapacity = capacity;
+		return this;
+	}
+
+	public int getMatchCacheCapacity()
+	{
+		return matchCacheCapacity;
+	}
+
+	/**
+	 * Intern the words of the edges of the built automata, the keys read with
+	 * the same table are then compared by identity
+	 */
+	public RegexAutomatonBuilder symbols(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+		return this;
+	}
+
+	public SymbolTable getSymbols()
+	{
+		return symbols;
+	}
+
 	public RegexAutomaton build() throws AutomatonException
 	{
 		return new RegexAutomaton(this);
 	}
 
+	/**
+	 * Build an automaton validated by a lazy deterministic automaton if it is not
+	 * deterministic
+	 * 
+	 * @param maxStates      maximum number of cached deterministic states
+	 * @param maxTransitions maximum number of cached transitions
+	 */
+	public RegexAutomaton buildLazy(int maxStates, int maxTransitions) throws AutomatonException
+	{
+		return new RegexAutomaton(this, s -> new LazyDFAPValidation<>(s, maxStates, maxTransitions));
+	}
+
+	public RegexAutomaton buildLazy() throws AutomatonException
+	{
+		return buildLazy(LazyDFAPValidation.DEFAULT_MAX_STATES, LazyDFAPValidation.DEFAULT_MAX_TRANSITIONS);
+	}
+
+	/**
+	 * Build the flat table representation of the automaton obtained by
+	 * {@link #powerset()} (which is computed first if needed).
+	 */
+	public TableRegexAutomaton buildTable() throws AutomatonException
+	{
+		if(!isPowerset)
+			powerset();
+		return new TableRegexAutomaton(this);
+	}
+
 	@Override
 	public String toString()
 	{
 		StringBuffer s = new StringBuffer();
 
 		s.append("Initial : ").append(initialState).append("\nJunction : ").append(junctionState).append("\nNodes : {");
-		for(int state : states)
+		for(int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1))
 			s.append(state).append(" ");
 		s.append("}\n");
 
 		s.append("Edges :\n");
-		for(Map.Entry<Integer, ArrayList<EdgeData>> entry : edges.entrySet())
+		for(ArrayList<EdgeData> stateEdges : edges)
 		{
-			for(EdgeData d : entry.getValue())
+			if(stateEdges == null)
+				continue;
+			for(EdgeData d : stateEdges)
 				s.append(d).append("\n");
 		}
 
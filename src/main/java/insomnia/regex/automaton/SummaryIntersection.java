@@ -0,0 +1,450 @@
+package insomnia.regex.automaton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import insomnia.automaton.edge.EdgeEpsilon;
+import insomnia.automaton.edge.IEdge;
+import insomnia.automaton.state.IState;
+import insomnia.summary.IIndexedSummary;
+import insomnia.summary.ISummary;
+
+/**
+ * Product of an automaton and a summary.
+ * A node of the summary is paired with the epsilon closed set of the states
+ * reached by its path, so non deterministic automata are handled. The summary
+ * is a tree : each pair is expanded once, and the transitions of the state sets
+ * are memoized (lazy subset construction) because the same keys come back in
+ * many subtrees. The sets and their transitions are shared between threads and
+ * between queries ; the memo is bounded, once full the transitions are still
+ * computed but no longer kept.
+ */
+final class SummaryIntersection
+{
+	static final int MAX_TRANSITIONS = 65536;
+
+	final class StateSet
+	{
+		final BitSet states;
+		final boolean isFinal;
+		private final ConcurrentHashMap<String, StateSet> transitions;
+
+		private StateSet(BitSet states)
+		{
+			this.states = states;
+			isFinal = states.intersects(finals);
+			transitions = new ConcurrentHashMap<>();
+		}
+	}
+
+	private final List<IState<String>> states;
+	private final IdentityHashMap<IState<String>, Integer> index;
+	private final BitSet finals;
+	private final BitSet[] closures;
+	private final ConcurrentHashMap<BitSet, StateSet> sets;
+	private final AtomicInteger transitionsCount;
+
+	final StateSet initial;
+	final StateSet dead;
+
+	SummaryIntersection(IState<String> initialState)
+	{
+		// Indexation dense des états accessibles
+		states = new ArrayList<>();
+		index = new IdentityHashMap<>();
+		ArrayDeque<IState<String>> toVisit = new ArrayDeque<>();
+		index.put(initialState, 0);
+		states.add(initialState);
+		toVisit.add(initialState);
+		while(!toVisit.isEmpty())
+		{
+			for(IEdge<String> edge : toVisit.poll())
+			{
+				IState<String> child = edge.getChild();
+				if(!index.containsKey(child))
+				{
+					index.put(child, states.size());
+					states.add(child);
+					toVisit.add(child);
+				}
+			}
+		}
+
+		int n = states.size();
+		finals = new BitSet(n);
+		closures = new BitSet[n];
+		for(int i = 0; i < n; i++)
+		{
+			if(states.get(i).isFinal())
+				finals.set(i);
+			closures[i] = epsilonClosure(i);
+		}
+
+		sets = new ConcurrentHashMap<>();
+		transitionsCount = new AtomicInteger();
+		dead = new StateSet(new BitSet());
+		initial = new StateSet((BitSet) closures[0].clone());
+		sets.put(dead.states, dead);
+		sets.put(initial.states, initial);
+	}
+
+	private BitSet epsilonClosure(int state)
+	{
+		BitSet closure = new BitSet();
+		ArrayDeque<Integer> stack = new ArrayDeque<>();
+		closure.set(state);
+		stack.push(state);
+		while(!stack.isEmpty())
+		{
+			for(IEdge<String> edge : states.get(stack.pop()))
+			{
+				if(!(edge instanceof EdgeEpsilon))
+					continue;
+				int child = index.get(edge.getChild());
+				if(!closure.get(child))
+				{
+					closure.set(child);
+					stack.push(child);
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * @return the set reached from set by key, {@link #dead} if it is empty
+	 */
+	StateSet step(StateSet set, String key)
+	{
+		StateSet next = set.transitions.get(key);
+		if(next != null)
+			return next;
+
+		BitSet reached = new BitSet();
+		for(int s = set.states.nextSetBit(0); s >= 0; s = set.states.nextSetBit(s + 1))
+		{
+			for(IEdge<String> edge : states.get(s))
+			{
+				if(!(edge instanceof EdgeEpsilon) && edge.isValid(key))
+					reached.or(closures[index.get(edge.getChild())]);
+			}
+		}
+		if(transitionsCount.get() >= MAX_TRANSITIONS)
+		{
+			// Mémo plein : les ensembles connus restent partagés
+			next = sets.get(reached);
+			return next != null ? next : new StateSet(reached);
+		}
+		next = sets.computeIfAbsent(reached, StateSet::new);
+		if(set.transitions.putIfAbsent(key, next) == null)
+			transitionsCount.incrementAndGet();
+		return next;
+	}
+
+	/**
+	 * Range of the children of a summary node, arrays are transparent
+	 */
+	abstract class Frame
+	{
+		final StateSet set;
+		final int from;
+		final int to;
+		int i;
+
+		Frame(StateSet set, int from, int to)
+		{
+			this.set = set;
+			this.from = from;
+			this.to = to;
+			i = from - 1;
+		}
+
+		/**
+		 * Move to the next child
+		 *
+		 * @return false if there is no more child
+		 */
+		boolean advance()
+		{
+			return ++i < to;
+		}
+
+		int size()
+		{
+			return to - from;
+		}
+
+		abstract String key();
+
+		abstract Frame child(StateSet set);
+
+		/**
+		 * @return the frame of the children [from, to[ of the same node
+		 */
+		abstract Frame slice(int from, int to);
+	}
+
+	private final class DataFrame extends Frame
+	{
+		private final List<Map.Entry<String, Object>> entries;
+
+		DataFrame(StateSet set, List<Map.Entry<String, Object>> entries, int from, int to)
+		{
+			super(set, from, to);
+			this.entries = entries;
+		}
+
+		@Override
+		String key()
+		{
+			return entries.get(i).getKey();
+		}
+
+		@Override
+		Frame child(StateSet set)
+		{
+			return dataFrame(set, entries.get(i).getValue());
+		}
+
+		@Override
+		Frame slice(int from, int to)
+		{
+			return new DataFrame(set, entries, from, to);
+		}
+	}
+
+	private DataFrame dataFrame(StateSet set, Object data)
+	{
+		List<Map.Entry<String, Object>> entries = new ArrayList<>();
+		addEntries(data, entries);
+		return new DataFrame(set, entries, 0, entries.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addEntries(Object data, List<Map.Entry<String, Object>> entries)
+	{
+		if(data instanceof Map)
+			entries.addAll(((Map<String, Object>) data).entrySet());
+		else if(data instanceof List)
+		{
+			for(Object elt : (List<Object>) data)
+				addEntries(elt, entries);
+		}
+	}
+
+	private final class IndexedFrame extends Frame
+	{
+		private final IIndexedSummary summary;
+		private final int node;
+
+		IndexedFrame(StateSet set, IIndexedSummary summary, int node, int from, int to)
+		{
+			super(set, from, to);
+			this.summary = summary;
+			this.node = node;
+		}
+
+		@Override
+		String key()
+		{
+			return summary.getKey(summary.getChildKey(node, i));
+		}
+
+		@Override
+		Frame child(StateSet set)
+		{
+			int child = summary.getChild(node, i);
+			return new IndexedFrame(set, summary, child, 0, summary.getChildrenCount(child));
+		}
+
+		@Override
+		Frame slice(int from, int to)
+		{
+			return new IndexedFrame(set, summary, node, from, to);
+		}
+	}
+
+	Frame rootFrame(ISummary summary)
+	{
+		if(summary instanceof IIndexedSummary)
+		{
+			IIndexedSummary indexed = (IIndexedSummary) summary;
+			int root = indexed.getRoot();
+			return new IndexedFrame(initial, indexed, root, 0, indexed.getChildrenCount(root));
+		}
+		return dataFrame(initial, summary.getData());
+	}
+
+	/**
+	 * @return the paths of the summary accepted by the automaton, each once, in
+	 *         depth first order
+	 */
+	Iterator<String> paths(ISummary summary)
+	{
+		return new PathIterator(rootFrame(summary));
+	}
+
+	/**
+	 * Depth first traversal of the product with an explicit stack
+	 */
+	final class PathIterator implements Iterator<String>
+	{
+		private final ArrayDeque<Frame> stack;
+		private final Path path;
+		private final HashSet<String> found;
+		private String nextPath;
+
+		PathIterator(Frame root)
+		{
+			stack = new ArrayDeque<>();
+			stack.push(root);
+			path = new Path();
+			found = new HashSet<>();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while(nextPath == null && !stack.isEmpty())
+			{
+				Frame frame = stack.peek();
+				if(!frame.advance())
+				{
+					stack.pop();
+					if(!stack.isEmpty())
+						path.pop();
+					continue;
+				}
+
+				String key = frame.key();
+				StateSet next = step(frame.set, key);
+				if(next == dead)
+					continue;
+
+				path.push(key);
+				stack.push(frame.child(next));
+				if(next.isFinal)
+				{
+					String p = path.getPath();
+					if(found.add(p))
+						nextPath = p;
+				}
+			}
+			return nextPath != null;
+		}
+
+		@Override
+		public String next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			String p = nextPath;
+			nextPath = null;
+			return p;
+		}
+	}
+
+	/**
+	 * Parallel traversal of the product : a range of more than threshold children
+	 * is split in two tasks, and a child with more than threshold children is
+	 * traversed by its own task. The pool balances the tasks by work stealing.
+	 *
+	 * @return the set of the accepted paths
+	 */
+	Set<String> paths(ISummary summary, ForkJoinPool pool, int threshold)
+	{
+		Set<String> found = ConcurrentHashMap.newKeySet();
+		pool.invoke(new PathTask(rootFrame(summary), "", found, threshold));
+		return found;
+	}
+
+	private final class PathTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4153072209582914113L;
+
+		private final Frame root;
+		private final String prefix;
+		private final Set<String> found;
+		private final int threshold;
+
+		/**
+		 * @param prefix path of the node of the frame
+		 */
+		PathTask(Frame root, String prefix, Set<String> found, int threshold)
+		{
+			this.root = root;
+			this.prefix = prefix;
+			this.found = found;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute()
+		{
+			int size = root.size();
+			if(size > threshold)
+			{
+				int middle = root.from + size / 2;
+				invokeAll(new PathTask(root.slice(root.from, middle), prefix, found, threshold),
+						new PathTask(root.slice(middle, root.to), prefix, found, threshold));
+				return;
+			}
+
+			// Parcours séquentiel, les sous-arbres larges sont confiés à d'autres tâches
+			List<PathTask> forks = new ArrayList<>();
+			ArrayDeque<Frame> stack = new ArrayDeque<>();
+			Path path = new Path();
+			stack.push(root);
+			while(!stack.isEmpty())
+			{
+				Frame frame = stack.peek();
+				if(!frame.advance())
+				{
+					stack.pop();
+					if(!stack.isEmpty())
+						path.pop();
+					continue;
+				}
+
+				String key = frame.key();
+				StateSet next = step(frame.set, key);
+				if(next == dead)
+					continue;
+
+				path.push(key);
+				if(next.isFinal)
+					found.add(pathOf(path));
+
+				Frame child = frame.child(next);
+				if(child.size() > threshold)
+				{
+					PathTask task = new PathTask(child, pathOf(path), found, threshold);
+					task.fork();
+					forks.add(task);
+					path.pop();
+				}
+				else
+					stack.push(child);
+			}
+			for(PathTask task : forks)
+				task.join();
+		}
+
+		private String pathOf(Path path)
+		{
+			return prefix.isEmpty() ? path.getPath() : prefix + "." + path.getPath();
+		}
+	}
+}
@@ -0,0 +1,719 @@
+package insomnia.regex.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.automaton.IAutomaton;
+import insomnia.automaton.edge.RegexPrefilter;
+import insomnia.regex.automaton.RegexAutomatonBuilder.EdgeData;
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Deterministic automaton stored as flat int arrays.
+ * States are dense ids (0 is the initial state), the labels are interned in a
+ * key dictionary and the labeled transitions of a state are a sorted range of
+ * key ids, so a step is a dictionary lookup and a binary search. Regex
+ * transitions are tested only when no label matches, each regex of the state
+ * once : the regex of a state are indexed by their literal prefix, so a key is
+ * only tested against the regex it starts like. A key matching several regex
+ * goes to the union of their targets : this combined state is built the first
+ * time the combination occurs, then shared between threads, and it gets its
+ * own lazily filled transitions like a state of the table. Combined states are
+ * numbered after the states of the table.
+ * If the builder has a {@link SymbolTable}, the key ids are the symbols of the
+ * labels, so the symbols given by a parser sharing the table are key ids.
+ */
+public final class TableRegexAutomaton implements IAutomaton<String>
+{
+	public static final int NO_STATE = -1;
+	public static final int NO_KEY = -1;
+
+	// Transition d'un état combiné pas encore calculée
+	private static final int UNKNOWN = -2;
+
+	private final HashMap<String, Integer> keys;
+	private final SymbolTable symbols;
+	private final boolean[] finals;
+
+	// Transitions labelées de l'état s : [keyOffsets[s], keyOffsets[s + 1][
+	private final int[] keyOffsets;
+	private final int[] keyIds;
+	private final int[] keyTargets;
+
+	// Transitions regex de l'état s : [regexOffsets[s], regexOffsets[s + 1][
+	private final int[] regexOffsets;
+	private final Pattern[] patterns;
+	private final int[] regexTargets;
+
+	private final RegexPrefilter[] prefilters;
+
+	// Motifs reconnus par chaque état pour un automate multi-motifs
+	private final int[][] patternIds;
+
+	/**
+	 * Union of states of the table reached by a key matching several regex
+	 */
+	private final class Combined
+	{
+		final BitSet members;
+		final boolean isFinal;
+		final int[] patternIds;
+
+		// Labels des membres triés, la cible de chacun est calculée au premier passage
+		final int[] words;
+		final int[] wordTargets;
+		// Regex des membres sans doublon, null si aucune
+		final RegexGroup regexs;
+
+		Combined(BitSet members)
+		{
+			this.members = members;
+			BitSet ids = new BitSet();
+			boolean isFinal = false;
+			// Une regex présente dans plusieurs membres n'est testée qu'une fois
+			LinkedHashMap<String, List<Integer>> byRegex = new LinkedHashMap<>();
+			HashMap<String, Integer> regexIndex = new HashMap<>();
+			for(int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1))
+			{
+				isFinal |= finals[s];
+				for(int id : TableRegexAutomaton.this.patternIds[s])
+					ids.set(id);
+				for(int i = regexOffsets[s]; i < regexOffsets[s + 1]; i++)
+				{
+					String regex = patterns[i].pattern();
+					regexIndex.putIfAbsent(regex, i);
+					byRegex.computeIfAbsent(regex, k -> new ArrayList<>()).add(regexTargets[i]);
+				}
+			}
+			this.isFinal = isFinal;
+			patternIds = ids.stream().toArray();
+
+			words = members.stream().flatMap(s -> Arrays.stream(keyIds, keyOffsets[s], keyOffsets[s + 1])).distinct()
+					.sorted().toArray();
+			wordTargets = new int[words.length];
+			Arrays.fill(wordTargets, UNKNOWN);
+
+			if(byRegex.isEmpty())
+				regexs = null;
+			else
+			{
+				int[] group = new int[byRegex.size()];
+				int[][] targets = new int[group.length][];
+				int i = 0;
+				for(Map.Entry<String, List<Integer>> entry : byRegex.entrySet())
+				{
+					group[i] = regexIndex.get(entry.getKey());
+					targets[i++] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+				}
+				regexs = new RegexGroup(group, targets);
+			}
+		}
+	}
+
+	/**
+	 * Regex of a state grouped by literal prefix, the positions are the ones of
+	 * the regex in their group
+	 */
+	private static final class PrefixIndex
+	{
+		private static final class Prefix
+		{
+			final String prefix;
+			final int hash;
+			final int[] regexs;
+			final Prefix next;
+
+			Prefix(String prefix, int[] regexs, Prefix next)
+			{
+				this.prefix = prefix;
+				hash = prefix.hashCode();
+				this.regexs = regexs;
+				this.next = next;
+			}
+		}
+
+		private final Prefix[] table;
+		// Longueurs distinctes des préfixes
+		final int[] lengths;
+		// Regex sans préfixe, toujours testées
+		final int[] others;
+
+		PrefixIndex(RegexPrefilter[] prefilters, int[] regexs)
+		{
+			HashMap<String, List<Integer>> byPrefix = new HashMap<>();
+			List<Integer> others = new ArrayList<>();
+			for(int i = 0; i < regexs.length; i++)
+			{
+				String prefix = prefilters[regexs[i]].getPrefix();
+				if(prefix.isEmpty())
+					others.add(i);
+				else
+					byPrefix.computeIfAbsent(prefix, k -> new ArrayList<>()).add(i);
+			}
+			int size = 1;
+			while(size < byPrefix.size() * 2)
+				size <<= 1;
+			table = new Prefix[size];
+			for(Map.Entry<String, List<Integer>> entry : byPrefix.entrySet())
+			{
+				int i = entry.getKey().hashCode() & (size - 1);
+				table[i] = new Prefix(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray(),
+						table[i]);
+			}
+			lengths = byPrefix.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+			this.others = others.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * @param hash hash of the length first chars of the element, as computed by
+		 *             {@link String#hashCode()}
+		 * @return the positions of the regex whose prefix starts the element, or
+		 *         null
+		 */
+		int[] get(String element, int length, int hash)
+		{
+			for(Prefix p = table[hash & (table.length - 1)]; p != null; p = p.next)
+			{
+				if(p.hash == hash && p.prefix.length() == length && element.regionMatches(0, p.prefix, 0, length))
+					return p.regexs;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Masks of the regex seen so far, sorted, with their target
+	 */
+	private static final class Masks
+	{
+		static final Masks EMPTY = new Masks(new long[0], new int[0]);
+
+		final long[] masks;
+		final int[] targets;
+
+		Masks(long[] masks, int[] targets)
+		{
+			this.masks = masks;
+			this.targets = targets;
+		}
+	}
+
+	/**
+	 * Regex tested together on a key, each once. The mask of the matching regex
+	 * is mapped to the state of the union of their targets the first time it
+	 * occurs. Up to 64 regex the mask is a long and the known masks are a sorted
+	 * array copied on each addition, beyond it is a BitSet.
+	 */
+	private final class RegexGroup
+	{
+		// Indices des regex dans patterns
+		final int[] regexs;
+		// États de la table atteints par chaque regex
+		final int[][] targets;
+		final PrefixIndex index;
+
+		// Les lectures se font sans verrou, seul l'ajout est synchronisé
+		private volatile Masks masks;
+		private final ConcurrentHashMap<BitSet, Integer> bitMasks;
+
+		RegexGroup(int[] regexs, int[][] targets)
+		{
+			this.regexs = regexs;
+			this.targets = targets;
+			index = new PrefixIndex(prefilters, regexs);
+			masks = Masks.EMPTY;
+			bitMasks = regexs.length > Long.SIZE ? new ConcurrentHashMap<>() : null;
+		}
+
+		/**
+		 * @return the state reached by the element or {@link #NO_STATE}
+		 */
+		int nextState(String element)
+		{
+			if(bitMasks != null)
+				return nextState(bitMask(element));
+
+			long mask = 0;
+			for(int i : index.others)
+			{
+				if(matches(regexs[i], element))
+					mask |= 1L << i;
+			}
+			int hash = 0;
+			int c = 0;
+			for(int length : index.lengths)
+			{
+				if(length > element.length())
+					break;
+				for(; c < length; c++)
+					hash = 31 * hash + element.charAt(c);
+				int[] candidates = index.get(element, length, hash);
+				if(candidates == null)
+					continue;
+				for(int i : candidates)
+				{
+					if(matches(regexs[i], element))
+						mask |= 1L << i;
+				}
+			}
+
+			if(mask == 0)
+				return NO_STATE;
+			if((mask & (mask - 1)) == 0)
+			{
+				int[] t = targets[Long.numberOfTrailingZeros(mask)];
+				if(t.length == 1)
+					return t[0];
+			}
+			Masks m = masks;
+			int pos = Arrays.binarySearch(m.masks, mask);
+			if(pos >= 0)
+				return m.targets[pos];
+			return addMask(mask);
+		}
+
+		private BitSet bitMask(String element)
+		{
+			BitSet mask = scratch.get();
+			mask.clear();
+			for(int i : index.others)
+			{
+				if(matches(regexs[i], element))
+					mask.set(i);
+			}
+			int hash = 0;
+			int c = 0;
+			for(int length : index.lengths)
+			{
+				if(length > element.length())
+					break;
+				for(; c < length; c++)
+					hash = 31 * hash + element.charAt(c);
+				int[] candidates = index.get(element, length, hash);
+				if(candidates == null)
+					continue;
+				for(int i : candidates)
+				{
+					if(matches(regexs[i], element))
+						mask.set(i);
+				}
+			}
+			return mask;
+		}
+
+		private int nextState(BitSet mask)
+		{
+			if(mask.isEmpty())
+				return NO_STATE;
+			Integer id = bitMasks.get(mask);
+			if(id != null)
+				return id;
+			// Le masque de travail est réutilisé, la clé gardée est une copie
+			return bitMasks.computeIfAbsent((BitSet) mask.clone(), m -> {
+				BitSet union = new BitSet();
+				for(int i = m.nextSetBit(0); i >= 0; i = m.nextSetBit(i + 1))
+				{
+					for(int t : targets[i])
+						union.set(t);
+				}
+				return internCombined(union);
+			});
+		}
+
+		private int addMask(long mask)
+		{
+			BitSet union = new BitSet();
+			for(long rest = mask; rest != 0; rest &= rest - 1)
+			{
+				for(int t : targets[Long.numberOfTrailingZeros(rest)])
+					union.set(t);
+			}
+			int target = internCombined(union);
+
+			synchronized(this)
+			{
+				Masks m = masks;
+				int pos = Arrays.binarySearch(m.masks, mask);
+				if(pos >= 0)
+					return m.targets[pos];
+				pos = -pos - 1;
+				int n = m.masks.length;
+				long[] newMasks = new long[n + 1];
+				int[] newTargets = new int[n + 1];
+				System.arraycopy(m.masks, 0, newMasks, 0, pos);
+				System.arraycopy(m.targets, 0, newTargets, 0, pos);
+				newMasks[pos] = mask;
+				newTargets[pos] = target;
+				System.arraycopy(m.masks, pos, newMasks, pos + 1, n - pos);
+				System.arraycopy(m.targets, pos, newTargets, pos + 1, n - pos);
+				masks = new Masks(newMasks, newTargets);
+				return target;
+			}
+		}
+	}
+
+	// Regex de chaque état, null si l'état a moins de deux regex
+	private final RegexGroup[] groups;
+	// Masque de travail des groupes de plus de 64 regex
+	private final ThreadLocal<BitSet> scratch;
+
+	private final ConcurrentHashMap<BitSet, Integer> combinedIds;
+	// Les lectures se font sans verrou, seul l'ajout est synchronisé
+	private volatile Combined[] combined;
+	private int combinedCount;
+
+	protected TableRegexAutomaton(RegexAutomatonBuilder b) throws AutomatonException
+	{
+		int n = b.states.cardinality();
+		HashMap<Integer, Integer> index = new HashMap<>();
+		index.put(b.initialState, 0);
+		for(int state = b.states.nextSetBit(0); state >= 0; state = b.states.nextSetBit(state + 1))
+		{
+			if(state != b.initialState)
+				index.put(state, index.size());
+		}
+
+		keys = new HashMap<>();
+		symbols = b.getSymbols();
+		finals = new boolean[n];
+		keyOffsets = new int[n + 1];
+		regexOffsets = new int[n + 1];
+
+		// Répartition des transitions par état dense
+		List<List<EdgeData>> words = new ArrayList<>();
+		List<List<EdgeData>> regexs = new ArrayList<>();
+		for(int i = 0; i < n; i++)
+		{
+			words.add(new ArrayList<>());
+			regexs.add(new ArrayList<>());
+		}
+		int nbWords = 0;
+		int nbRegexs = 0;
+		for(Map.Entry<Integer, Integer> entry : index.entrySet())
+		{
+			int state = entry.getValue();
+			finals[state] = b.finalState.get(entry.getKey());
+
+			ArrayList<EdgeData> stateEdges = b.edgesOf(entry.getKey());
+			if(stateEdges == null)
+				continue;
+			for(EdgeData d : stateEdges)
+			{
+				if(d.type == EdgeData.Type.STRING_EQUALS)
+				{
+					keys.computeIfAbsent(d.str, k -> symbols == null ? keys.size() : symbols.intern(k));
+					words.get(state).add(d);
+					nbWords++;
+				}
+				else if(d.type == EdgeData.Type.REGEX)
+				{
+					regexs.get(state).add(d);
+					nbRegexs++;
+				}
+				else
+					throw new AutomatonException("Invalid edge type for a deterministic table : " + d.type);
+			}
+		}
+
+		keyIds = new int[nbWords];
+		keyTargets = new int[nbWords];
+		patterns = new Pattern[nbRegexs];
+		prefilters = new RegexPrefilter[nbRegexs];
+		regexTargets = new int[nbRegexs];
+		groups = new RegexGroup[n];
+
+		int w = 0;
+		int r = 0;
+		long[] sorted = new long[0];
+		for(int state = 0; state < n; state++)
+		{
+			keyOffsets[state] = w;
+			regexOffsets[state] = r;
+
+			// Tri des transitions par identifiant de clé
+			List<EdgeData> stateWords = words.get(state);
+			if(sorted.length < stateWords.size())
+				sorted = new long[stateWords.size()];
+			for(int i = 0; i < stateWords.size(); i++)
+			{
+				EdgeData d = stateWords.get(i);
+				sorted[i] = ((long) keys.get(d.str) << 32) | index.get(d.endState);
+			}
+			Arrays.sort(sorted, 0, stateWords.size());
+			for(int i = 0; i < stateWords.size(); i++, w++)
+			{
+				keyIds[w] = (int) (sorted[i] >>> 32);
+				keyTargets[w] = (int) sorted[i];
+				if(i > 0 && keyIds[w] == keyIds[w - 1])
+					throw new AutomatonException("The automaton is not deterministic on '" + stateWords.get(i).str + "'");
+			}
+
+			for(EdgeData d : regexs.get(state))
+			{
+				patterns[r] = Pattern.compile(d.str);
+				prefilters[r] = RegexPrefilter.analyze(d.str);
+				regexTargets[r++] = index.get(d.endState);
+			}
+			if(r - regexOffsets[state] > 1)
+			{
+				int[] group = new int[r - regexOffsets[state]];
+				int[][] targets = new int[group.length][];
+				for(int i = 0; i < group.length; i++)
+				{
+					group[i] = regexOffsets[state] + i;
+					targets[i] = new int[] { regexTargets[group[i]] };
+				}
+				groups[state] = new RegexGroup(group, targets);
+			}
+		}
+		keyOffsets[n] = w;
+		regexOffsets[n] = r;
+
+		patternIds = new int[n][];
+		Arrays.fill(patternIds, new int[0]);
+		if(b.patternIds != null)
+		{
+			for(Map.Entry<Integer, TreeSet<Integer>> entry : b.patternIds.entrySet())
+			{
+				Integer state = index.get(entry.getKey());
+				if(state == null)
+					continue;
+				int[] ids = new int[entry.getValue().size()];
+				int i = 0;
+				for(int id : entry.getValue())
+					ids[i++] = id;
+				patternIds[state] = ids;
+			}
+		}
+
+		scratch = ThreadLocal.withInitial(BitSet::new);
+		combinedIds = new ConcurrentHashMap<>();
+		combined = new Combined[0];
+		combinedCount = 0;
+	}
+
+	@Override
+	public boolean run(List<String> elements)
+	{
+		int state = getInitialState();
+		for(String element : elements)
+		{
+			state = nextState(state, element);
+			if(state == NO_STATE)
+				return false;
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * Run on keys already translated with {@link #getKeyId(String)}, or given
+	 * by their symbols in {@link #getSymbols()}. The words are only needed for
+	 * the regex transitions.
+	 */
+	public boolean run(int[] elementIds, List<String> elements)
+	{
+		int state = getInitialState();
+		for(int i = 0; i < elementIds.length; i++)
+		{
+			state = nextState(state, elementIds[i], elements.get(i));
+			if(state == NO_STATE)
+				return false;
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * @return the id of the key in the dictionary or {@link #NO_KEY} if no
+	 *         transition has this label
+	 */
+	public int getKeyId(String key)
+	{
+		Integer id = keys.get(key);
+		return id == null ? NO_KEY : id;
+	}
+
+	public int nextState(int state, String element)
+	{
+		return nextState(state, getKeyId(element), element);
+	}
+
+	/**
+	 * @param elementId id of the element given by {@link #getKeyId(String)}, its
+	 *                  symbol in {@link #getSymbols()}, or {@link #NO_KEY}
+	 * @return the next state or {@link #NO_STATE}
+	 */
+	public int nextState(int state, int elementId, String element)
+	{
+		if(state >= finals.length)
+			return nextCombinedState(combined(state), elementId, element);
+
+		if(elementId != NO_KEY)
+		{
+			int pos = Arrays.binarySearch(keyIds, keyOffsets[state], keyOffsets[state + 1], elementId);
+			if(pos >= 0)
+				return keyTargets[pos];
+		}
+
+		int start = regexOffsets[state];
+		int end = regexOffsets[state + 1];
+		if(end - start == 0)
+			return NO_STATE;
+		if(end - start == 1)
+			return matches(start, element) ? regexTargets[start] : NO_STATE;
+		return groups[state].nextState(element);
+	}
+
+	private boolean matches(int regex, String element)
+	{
+		RegexPrefilter prefilter = prefilters[regex];
+		if(!prefilter.mayMatch(element))
+			return false;
+		return prefilter.isExact() || patterns[regex].matcher(element).matches();
+	}
+
+	private int nextCombinedState(Combined state, int elementId, String element)
+	{
+		if(elementId != NO_KEY)
+		{
+			int pos = Arrays.binarySearch(state.words, elementId);
+			if(pos >= 0)
+			{
+				int next = state.wordTargets[pos];
+				if(next == UNKNOWN)
+				{
+					// Chaque membre avance, par son label ou par ses regex
+					BitSet targets = new BitSet();
+					for(int s = state.members.nextSetBit(0); s >= 0; s = state.members.nextSetBit(s + 1))
+					{
+						int t = nextState(s, elementId, element);
+						if(t == NO_STATE)
+							continue;
+						if(t < finals.length)
+							targets.set(t);
+						else
+							targets.or(combined(t).members);
+					}
+					next = targets.isEmpty() ? NO_STATE : internCombined(targets);
+					state.wordTargets[pos] = next;
+				}
+				return next;
+			}
+		}
+		return state.regexs == null ? NO_STATE : state.regexs.nextState(element);
+	}
+
+	private Combined combined(int state)
+	{
+		int i = state - finals.length;
+		Combined[] c = combined;
+		if(i < c.length && c[i] != null)
+			return c[i];
+
+		// L'état a pu être ajouté sans que ce thread le voie encore
+		synchronized(combinedIds)
+		{
+			return combined[i];
+		}
+	}
+
+	/**
+	 * @param members states of the table
+	 * @return the state of the union of the members
+	 */
+	private int internCombined(BitSet members)
+	{
+		if(members.cardinality() == 1)
+			return members.nextSetBit(0);
+		Integer id = combinedIds.get(members);
+		if(id != null)
+			return id;
+
+		synchronized(combinedIds)
+		{
+			id = combinedIds.get(members);
+			if(id != null)
+				return id;
+
+			Combined[] c = combined;
+			if(combinedCount == c.length)
+				c = Arrays.copyOf(c, Math.max(8, c.length * 2));
+			c[combinedCount] = new Combined(members);
+			combined = c;
+			id = finals.length + combinedCount++;
+			combinedIds.put(members, id);
+			return id;
+		}
+	}
+
+	public int getInitialState()
+	{
+		return 0;
+	}
+
+	public boolean isFinal(int state)
+	{
+		return state < finals.length ? finals[state] : combined(state).isFinal;
+	}
+
+	/**
+	 * @return the sorted indices of the patterns recognized by the state, empty
+	 *         if the automaton is not a multi-pattern one
+	 */
+	public int[] getPatternIds(int state)
+	{
+		return state < finals.length ? patternIds[state] : combined(state).patternIds;
+	}
+
+	/**
+	 * @return the table whose symbols are the key ids, or null if the ids are
+	 *         local to the automaton
+	 */
+	public SymbolTable getSymbols()
+	{
+		return symbols;
+	}
+
+	/**
+	 * @return the number of states of the table, without the combined states
+	 */
+	public int getStatesCount()
+	{
+		return finals.length;
+	}
+
+	/**
+	 * @return the number of combined states built so far
+	 */
+	public int getCombinedStatesCount()
+	{
+		return combinedIds.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		HashMap<Integer, String> labels = new HashMap<>();
+		for(Map.Entry<String, Integer> entry : keys.entrySet())
+			labels.put(entry.getValue(), entry.getKey());
+
+		StringBuffer s = new StringBuffer();
+		for(int state = 0; state < finals.length; state++)
+		{
+			s.append(state).append(finals[state] ? " (final)" : "").append(" :\n");
+			for(int i = keyOffsets[state]; i < keyOffsets[state + 1]; i++)
+				s.append("\t").append(labels.get(keyIds[i])).append(" -> ").append(keyTargets[i]).append("\n");
+			for(int i = regexOffsets[state]; i < regexOffsets[state + 1]; i++)
+				s.append("\t~").append(patterns[i]).append("~ -> ").append(regexTargets[i]).append("\n");
+		}
+		return s.toString();
+	}
+}
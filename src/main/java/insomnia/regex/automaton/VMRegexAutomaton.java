@@ -2,6 +2,7 @@ package insomnia.regex.automaton;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import insomnia.automaton.AutomatonException;
 import insomnia.automaton.IAutomaton;
@@ -14,6 +15,16 @@ public class VMRegexAutomaton implements IAutomaton<String>
 		KEY, REGEX, MATCH, JUMP, SPLIT;
 	}
 
+	/**
+	 * BACKTRACKING : recursive depth first run, exponential in the worst case
+	 * PIKE_VM : breadth first run over a list of threads deduplicated by program
+	 * counter, linear in path length × program size
+	 */
+	public enum Execution
+	{
+		BACKTRACKING, PIKE_VM;
+	}
+
 	protected class Instruction
 	{
 		public Type type;
@@ -30,11 +41,30 @@ public class VMRegexAutomaton implements IAutomaton<String>
 	}
 
 	List<Instruction> instructions;
+	Execution execution;
+
+	// Programme indexé par compteur ordinal pour la Pike VM
+	Type[] types;
+	String[] strs;
+	Pattern[] patterns;
+	int[] nexts1;
+	int[] nexts2;
 
 	protected VMRegexAutomaton(VMRegexAutomatonBuilder builder)
+	{
+		this(builder, Execution.BACKTRACKING);
+	}
+
+	protected VMRegexAutomaton(VMRegexAutomatonBuilder builder, Execution execution)
 	{
 		int n = builder.instructions.size();
 		instructions = new ArrayList<>();
+		this.execution = execution;
+		types = new Type[n];
+		strs = new String[n];
+		patterns = new Pattern[n];
+		nexts1 = new int[n];
+		nexts2 = new int[n];
 
 		for(int i = 0; i < n; i++)
 			instructions.add(new Instruction());
@@ -62,15 +92,108 @@ public class VMRegexAutomaton implements IAutomaton<String>
 			case MATCH:
 				break;
 			}
+
+			types[i] = data.type;
+			strs[i] = data.str;
+			nexts1[i] = data.inst1;
+			nexts2[i] = data.inst2;
+			if(data.type == Type.REGEX)
+				patterns[i] = Pattern.compile(data.str);
 		}
 	}
 
 	@Override
 	public boolean run(List<String> elements) throws AutomatonException
 	{
+		if(execution == Execution.PIKE_VM)
+			return runPike(elements);
 		return run(elements, instructions.get(0), 0);
 	}
 
+	public Execution getExecution()
+	{
+		return execution;
+	}
+
+	private boolean runPike(List<String> elements)
+	{
+		int n = types.length;
+		int[] threads = new int[n];
+		int[] nextThreads = new int[n];
+		int[] marks = new int[n];
+		int[] stack = new int[2 * n + 1];
+		int generation = 1;
+
+		int nbThreads = addThread(threads, 0, 0, marks, generation, stack);
+		for(String element : elements)
+		{
+			generation++;
+			int nbNextThreads = 0;
+			for(int t = 0; t < nbThreads; t++)
+			{
+				int pc = threads[t];
+				switch(types[pc])
+				{
+				case KEY:
+					if(element.equals(strs[pc]))
+						nbNextThreads = addThread(nextThreads, nbNextThreads, nexts1[pc], marks, generation, stack);
+					break;
+				case REGEX:
+					if(patterns[pc].matcher(element).matches())
+						nbNextThreads = addThread(nextThreads, nbNextThreads, nexts1[pc], marks, generation, stack);
+					break;
+				default:
+					// Un MATCH avant la fin du chemin échoue
+					break;
+				}
+			}
+			if(nbNextThreads == 0)
+				return false;
+
+			int[] temp = threads;
+			threads = nextThreads;
+			nextThreads = temp;
+			nbThreads = nbNextThreads;
+		}
+
+		for(int t = 0; t < nbThreads; t++)
+		{
+			if(types[threads[t]] == Type.MATCH)
+				return true;
+		}
+		return false;
+	}
+
+	// Ajoute les threads atteints depuis pc par les JUMP et SPLIT,
+	// chaque compteur ordinal n'est ajouté qu'une fois par génération
+	private int addThread(int[] threads, int nbThreads, int pc, int[] marks, int generation, int[] stack)
+	{
+		int top = 0;
+		stack[top++] = pc;
+		while(top > 0)
+		{
+			pc = stack[--top];
+			if(marks[pc] == generation)
+				continue;
+			marks[pc] = generation;
+
+			switch(types[pc])
+			{
+			case JUMP:
+				stack[top++] = nexts1[pc];
+				break;
+			case SPLIT:
+				stack[top++] = nexts2[pc];
+				stack[top++] = nexts1[pc];
+				break;
+			default:
+				threads[nbThreads++] = pc;
+				break;
+			}
+		}
+		return nbThreads;
+	}
+
 	private boolean run(List<String> elements, Instruction inst, int index)
 	{
 		switch(inst.type)
@@ -4,6 +4,8 @@ import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.List;
 
+import insomnia.automaton.AutomatonException;
+import insomnia.automaton.IAutomaton;
 import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
 import insomnia.regex.automaton.VMRegexAutomaton.Type;
 import insomnia.regex.element.IElement;
@@ -143,4 +145,19 @@ public class VMRegexAutomatonBuilder
 	{
 		return new VMRegexAutomaton(this);
 	}
+
+	public VMRegexAutomaton build(VMRegexAutomaton.Execution execution)
+	{
+		return new VMRegexAutomaton(this, execution);
+	}
+
+	/**
+	 * Compile the program to a generated class.
+	 * 
+	 * @throws AutomatonException if the program is too large to be compiled
+	 */
+	public IAutomaton<String> buildCompiled() throws AutomatonException
+	{
+		return VMRegexCompiler.compile(build(VMRegexAutomaton.Execution.PIKE_VM));
+	}
 }
@@ -0,0 +1,507 @@
+package insomnia.regex.automaton;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.automaton.IAutomaton;
+import insomnia.regex.automaton.VMRegexAutomaton.Type;
+
+/**
+ * Compile the program of a VMRegexAutomaton to a class implementing
+ * IAutomaton<String>, without any bytecode library.
+ * The JUMP and SPLIT instructions are resolved at compile time : each KEY,
+ * REGEX and MATCH instruction is a bit of the set of current threads, and the
+ * run method tests each of them in straight line code, with the labels as
+ * constants so that the JIT can inline the comparisons.
+ */
+final class VMRegexCompiler
+{
+	private static final int MAX_CODE_LENGTH = 32000;
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	private static final String AUTOMATON = "insomnia/automaton/IAutomaton";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String STRING = "java/lang/String";
+	private static final String LIST = "java/util/List";
+	private static final String PATTERN = "java/util/regex/Pattern";
+	private static final String MATCHER = "java/util/regex/Matcher";
+	private static final String PATTERNS_DESC = "[L" + PATTERN + ";";
+
+	private static final class Loader extends ClassLoader
+	{
+		Loader(ClassLoader parent)
+		{
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] b)
+		{
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+	private static final class ByteVector
+	{
+		byte[] data = new byte[256];
+		int length = 0;
+
+		ByteVector putByte(int b)
+		{
+			if(length == data.length)
+				data = java.util.Arrays.copyOf(data, length * 2);
+			data[length++] = (byte) b;
+			return this;
+		}
+
+		ByteVector putShort(int s)
+		{
+			return putByte(s >>> 8).putByte(s);
+		}
+
+		void setShort(int pos, int s)
+		{
+			data[pos] = (byte) (s >>> 8);
+			data[pos + 1] = (byte) s;
+		}
+	}
+
+	// Opcodes utilisés
+	private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD = 0x19, ASTORE = 0x3a;
+	private static final int ILOAD_2 = 0x1c, ILOAD_3 = 0x1d, ISTORE_2 = 0x3d, ISTORE_3 = 0x3e;
+	private static final int ICONST_0 = 0x03, ICONST_1 = 0x04, LCONST_0 = 0x09, SIPUSH = 0x11;
+	private static final int LDC_W = 0x13, LDC2_W = 0x14, LLOAD = 0x16, LSTORE = 0x37, AALOAD = 0x32;
+	private static final int LAND = 0x7f, LOR = 0x81, IINC = 0x84, LCMP = 0x94;
+	private static final int IFEQ = 0x99, IFNE = 0x9a, IF_ICMPGE = 0xa2, GOTO = 0xa7;
+	private static final int IRETURN = 0xac, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5;
+	private static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKEINTERFACE = 0xb9, CHECKCAST = 0xc0;
+
+	private final VMRegexAutomaton automaton;
+	private final String className;
+
+	private final ByteVector pool = new ByteVector();
+	private final HashMap<String, Integer> poolIndex = new HashMap<>();
+	private int poolCount = 1;
+
+	// Instructions consommatrices (KEY, REGEX) et MATCH, une par bit
+	private final int[] bitOf;
+	private final List<Integer> pcs = new ArrayList<>();
+	private final int words;
+
+	private VMRegexCompiler(VMRegexAutomaton automaton)
+	{
+		this.automaton = automaton;
+		className = "insomnia/regex/automaton/CompiledVMRegex$" + classCounter.incrementAndGet();
+
+		int n = automaton.types.length;
+		bitOf = new int[n];
+		for(int pc = 0; pc < n; pc++)
+		{
+			Type t = automaton.types[pc];
+			if(t == Type.KEY || t == Type.REGEX || t == Type.MATCH)
+			{
+				bitOf[pc] = pcs.size();
+				pcs.add(pc);
+			}
+			else
+				bitOf[pc] = -1;
+		}
+		words = Math.max(1, (pcs.size() + 63) >>> 6);
+	}
+
+	/**
+	 * @throws AutomatonException if the program is too large to fit in one method
+	 *                            or if the class can't be loaded
+	 */
+	static IAutomaton<String> compile(VMRegexAutomaton automaton) throws AutomatonException
+	{
+		return new VMRegexCompiler(automaton).compile();
+	}
+
+	@SuppressWarnings("unchecked")
+	private IAutomaton<String> compile() throws AutomatonException
+	{
+		// Les regex sont passées au constructeur de la classe générée
+		List<Pattern> patterns = new ArrayList<>();
+		HashMap<Integer, Integer> patternIndex = new HashMap<>();
+		for(int pc : pcs)
+		{
+			if(automaton.types[pc] == Type.REGEX)
+			{
+				patternIndex.put(pc, patterns.size());
+				patterns.add(automaton.patterns[pc]);
+			}
+		}
+
+		byte[] bytes = generateClass(patternIndex);
+		try
+		{
+			Loader loader = new Loader(VMRegexCompiler.class.getClassLoader());
+			Class<?> c = loader.define(className.replace('/', '.'), bytes);
+			Object instance = c.getConstructor(Pattern[].class)
+					.newInstance((Object) patterns.toArray(new Pattern[patterns.size()]));
+			return (IAutomaton<String>) instance;
+		}
+		catch(ReflectiveOperationException | LinkageError e)
+		{
+			throw new AutomatonException("Unable to load the compiled automaton", e);
+		}
+	}
+
+	// Ensemble des bits atteints depuis pc par les JUMP et SPLIT
+	private long[] closure(int pc)
+	{
+		long[] set = new long[words];
+		boolean[] visited = new boolean[automaton.types.length];
+		ArrayDeque<Integer> stack = new ArrayDeque<>();
+		stack.push(pc);
+		while(!stack.isEmpty())
+		{
+			pc = stack.pop();
+			if(visited[pc])
+				continue;
+			visited[pc] = true;
+			switch(automaton.types[pc])
+			{
+			case JUMP:
+				stack.push(automaton.nexts1[pc]);
+				break;
+			case SPLIT:
+				stack.push(automaton.nexts2[pc]);
+				stack.push(automaton.nexts1[pc]);
+				break;
+			default:
+				int bit = bitOf[pc];
+				set[bit >>> 6] |= 1L << bit;
+				break;
+			}
+		}
+		return set;
+	}
+
+	private byte[] generateClass(HashMap<Integer, Integer> patternIndex) throws AutomatonException
+	{
+		int thisClass = classRef(className);
+		int objectClass = classRef(OBJECT);
+		int automatonClass = classRef(AUTOMATON);
+		int patternsField = fieldRef(className, "patterns", PATTERNS_DESC);
+
+		// Constructeur
+		ByteVector init = new ByteVector();
+		init.putByte(ALOAD_0).putByte(INVOKESPECIAL).putShort(methodRef(OBJECT, "<init>", "()V", false));
+		init.putByte(ALOAD_0).putByte(ALOAD_1).putByte(PUTFIELD).putShort(patternsField);
+		init.putByte(RETURN);
+
+		ByteVector run = generateRun(patternsField, patternIndex);
+		if(run.length > MAX_CODE_LENGTH)
+			throw new AutomatonException("Program too large to be compiled : " + run.length + " bytes");
+
+		int fieldName = utf8("patterns");
+		int fieldDesc = utf8(PATTERNS_DESC);
+		int initName = utf8("<init>");
+		int initDesc = utf8("(" + PATTERNS_DESC + ")V");
+		int runName = utf8("run");
+		int runDesc = utf8("(L" + LIST + ";)Z");
+		int codeName = utf8("Code");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			out.writeInt(0xCAFEBABE);
+			// Version 49 : pas de StackMapTable nécessaire
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(poolCount);
+			out.write(pool.data, 0, pool.length);
+
+			out.writeShort(0x0001 | 0x0010 | 0x0020);
+			out.writeShort(thisClass);
+			out.writeShort(objectClass);
+			out.writeShort(1);
+			out.writeShort(automatonClass);
+
+			out.writeShort(1);
+			out.writeShort(0x0002 | 0x0010);
+			out.writeShort(fieldName);
+			out.writeShort(fieldDesc);
+			out.writeShort(0);
+
+			out.writeShort(2);
+			writeMethod(out, initName, initDesc, codeName, init, 2, 2);
+			writeMethod(out, runName, runDesc, codeName, run, 6, 5 + 4 * words);
+
+			out.writeShort(0);
+		}
+		catch(IOException e)
+		{
+			throw new AutomatonException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int name, int desc, int codeName, ByteVector code,
+			int maxStack, int maxLocals) throws IOException
+	{
+		out.writeShort(0x0001);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code.data, 0, code.length);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+
+	/*
+	 * boolean run(List elements)
+	 * locals : 0 this, 1 elements, 2 n, 3 i, 4 element, 5.. current threads, then next threads
+	 */
+	private ByteVector generateRun(int patternsField, HashMap<Integer, Integer> patternIndex)
+	{
+		ByteVector c = new ByteVector();
+		int current = 5;
+		int next = 5 + 2 * words;
+
+		long[] initial = closure(0);
+		for(int w = 0; w < words; w++)
+		{
+			pushLong(c, initial[w]);
+			c.putByte(LSTORE).putByte(current + 2 * w);
+		}
+		c.putByte(ALOAD_1).putByte(INVOKEINTERFACE).putShort(methodRef(LIST, "size", "()I", true)).putByte(1).putByte(0);
+		c.putByte(ISTORE_2);
+		c.putByte(ICONST_0).putByte(ISTORE_3);
+
+		// Boucle sur les éléments
+		int loop = c.length;
+		c.putByte(ILOAD_3).putByte(ILOAD_2);
+		int exitLoop = branch(c, IF_ICMPGE);
+		c.putByte(ALOAD_1).putByte(ILOAD_3);
+		c.putByte(INVOKEINTERFACE).putShort(methodRef(LIST, "get", "(I)L" + OBJECT + ";", true)).putByte(2).putByte(0);
+		c.putByte(CHECKCAST).putShort(classRef(STRING));
+		c.putByte(ASTORE).putByte(4);
+		for(int w = 0; w < words; w++)
+			c.putByte(LCONST_0).putByte(LSTORE).putByte(next + 2 * w);
+
+		for(int pc : pcs)
+		{
+			Type t = automaton.types[pc];
+			if(t == Type.MATCH)
+				continue;
+
+			// Le thread est il actif ?
+			int bit = bitOf[pc];
+			c.putByte(LLOAD).putByte(current + 2 * (bit >>> 6));
+			pushLong(c, 1L << bit);
+			c.putByte(LAND).putByte(LCONST_0).putByte(LCMP);
+			int skipInactive = branch(c, IFEQ);
+
+			// Test de l'élément
+			if(t == Type.KEY)
+			{
+				c.putByte(ALOAD).putByte(4);
+				c.putByte(LDC_W).putShort(string(automaton.strs[pc]));
+				c.putByte(INVOKEVIRTUAL).putShort(methodRef(STRING, "equals", "(L" + OBJECT + ";)Z", false));
+			}
+			else
+			{
+				c.putByte(ALOAD_0).putByte(GETFIELD).putShort(patternsField);
+				c.putByte(SIPUSH).putShort(patternIndex.get(pc));
+				c.putByte(AALOAD);
+				c.putByte(ALOAD).putByte(4);
+				c.putByte(INVOKEVIRTUAL)
+						.putShort(methodRef(PATTERN, "matcher", "(Ljava/lang/CharSequence;)L" + MATCHER + ";", false));
+				c.putByte(INVOKEVIRTUAL).putShort(methodRef(MATCHER, "matches", "()Z", false));
+			}
+			int skipInvalid = branch(c, IFEQ);
+
+			// Ajout des threads suivants
+			long[] follow = closure(automaton.nexts1[pc]);
+			for(int w = 0; w < words; w++)
+			{
+				if(follow[w] == 0)
+					continue;
+				c.putByte(LLOAD).putByte(next + 2 * w);
+				pushLong(c, follow[w]);
+				c.putByte(LOR).putByte(LSTORE).putByte(next + 2 * w);
+			}
+			patch(c, skipInactive, c.length);
+			patch(c, skipInvalid, c.length);
+		}
+
+		// Plus aucun thread : échec
+		List<Integer> notEmpty = new ArrayList<>();
+		for(int w = 0; w < words; w++)
+		{
+			c.putByte(LLOAD).putByte(next + 2 * w).putByte(LCONST_0).putByte(LCMP);
+			notEmpty.add(branch(c, IFNE));
+		}
+		c.putByte(ICONST_0).putByte(IRETURN);
+		for(int b : notEmpty)
+			patch(c, b, c.length);
+
+		for(int w = 0; w < words; w++)
+			c.putByte(LLOAD).putByte(next + 2 * w).putByte(LSTORE).putByte(current + 2 * w);
+		c.putByte(IINC).putByte(3).putByte(1);
+		patch(c, branch(c, GOTO), loop);
+
+		// Fin du chemin : un thread doit être sur un MATCH
+		patch(c, exitLoop, c.length);
+		long[] matchs = new long[words];
+		for(int pc : pcs)
+		{
+			if(automaton.types[pc] == Type.MATCH)
+				matchs[bitOf[pc] >>> 6] |= 1L << bitOf[pc];
+		}
+		for(int w = 0; w < words; w++)
+		{
+			if(matchs[w] == 0)
+				continue;
+			c.putByte(LLOAD).putByte(current + 2 * w);
+			pushLong(c, matchs[w]);
+			c.putByte(LAND).putByte(LCONST_0).putByte(LCMP);
+			int noMatch = branch(c, IFEQ);
+			c.putByte(ICONST_1).putByte(IRETURN);
+			patch(c, noMatch, c.length);
+		}
+		c.putByte(ICONST_0).putByte(IRETURN);
+		return c;
+	}
+
+	private void pushLong(ByteVector c, long value)
+	{
+		if(value == 0)
+			c.putByte(LCONST_0);
+		else
+			c.putByte(LDC2_W).putShort(longConst(value));
+	}
+
+	private static int branch(ByteVector c, int opcode)
+	{
+		int pos = c.length;
+		c.putByte(opcode).putShort(0);
+		return pos;
+	}
+
+	private static void patch(ByteVector c, int branch, int target)
+	{
+		c.setShort(branch + 1, target - branch);
+	}
+
+	/*
+	 * Constant pool
+	 */
+
+	private int utf8(String s)
+	{
+		Integer index = poolIndex.get("U" + s);
+		if(index != null)
+			return index;
+		pool.putByte(1);
+		byte[] b = modifiedUtf8(s);
+		pool.putShort(b.length);
+		for(byte x : b)
+			pool.putByte(x);
+		return register("U" + s, 1);
+	}
+
+	private int classRef(String internalName)
+	{
+		Integer index = poolIndex.get("C" + internalName);
+		if(index != null)
+			return index;
+		int name = utf8(internalName);
+		pool.putByte(7).putShort(name);
+		return register("C" + internalName, 1);
+	}
+
+	private int string(String s)
+	{
+		Integer index = poolIndex.get("S" + s);
+		if(index != null)
+			return index;
+		int value = utf8(s);
+		pool.putByte(8).putShort(value);
+		return register("S" + s, 1);
+	}
+
+	private int longConst(long value)
+	{
+		Integer index = poolIndex.get("J" + value);
+		if(index != null)
+			return index;
+		pool.putByte(5).putShort((int) (value >>> 48)).putShort((int) (value >>> 32)) //
+				.putShort((int) (value >>> 16)).putShort((int) value);
+		// Un long occupe deux entrées
+		return register("J" + value, 2);
+	}
+
+	private int nameAndType(String name, String desc)
+	{
+		Integer index = poolIndex.get("N" + name + ":" + desc);
+		if(index != null)
+			return index;
+		int n = utf8(name);
+		int d = utf8(desc);
+		pool.putByte(12).putShort(n).putShort(d);
+		return register("N" + name + ":" + desc, 1);
+	}
+
+	private int fieldRef(String owner, String name, String desc)
+	{
+		return memberRef(9, owner, name, desc);
+	}
+
+	private int methodRef(String owner, String name, String desc, boolean isInterface)
+	{
+		return memberRef(isInterface ? 11 : 10, owner, name, desc);
+	}
+
+	private int memberRef(int tag, String owner, String name, String desc)
+	{
+		String key = "M" + tag + owner + "." + name + ":" + desc;
+		Integer index = poolIndex.get(key);
+		if(index != null)
+			return index;
+		int c = classRef(owner);
+		int nt = nameAndType(name, desc);
+		pool.putByte(tag).putShort(c).putShort(nt);
+		return register(key, 1);
+	}
+
+	private int register(String key, int size)
+	{
+		int index = poolCount;
+		poolIndex.put(key, index);
+		poolCount += size;
+		return index;
+	}
+
+	// Encodage UTF-8 modifié des class files (\0 et caractères supplémentaires)
+	private static byte[] modifiedUtf8(String s)
+	{
+		ByteVector b = new ByteVector();
+		for(int i = 0; i < s.length(); i++)
+		{
+			char ch = s.charAt(i);
+			if(ch != 0 && ch < 0x80)
+				b.putByte(ch);
+			else if(ch < 0x800)
+				b.putByte(0xc0 | (ch >> 6)).putByte(0x80 | (ch & 0x3f));
+			else
+				b.putByte(0xe0 | (ch >> 12)).putByte(0x80 | ((ch >> 6) & 0x3f)).putByte(0x80 | (ch & 0x3f));
+		}
+		return java.util.Arrays.copyOf(b.data, b.length);
+	}
+}
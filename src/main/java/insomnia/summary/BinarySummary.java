@@ -0,0 +1,334 @@
+package insomnia.summary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Summary read from the binary format written by {@link BinarySummaryWriter}.
+ * Nothing is deserialized at loading : the data is a tree of read-only Map and
+ * List views over the bytes, which may be a memory mapped file. Only the keys
+ * are decoded, once, when they are first used.
+ * The nodes of {@link IIndexedSummary} are the offsets of the nodes in the
+ * bytes.
+ */
+public final class BinarySummary implements IIndexedSummary
+{
+	private final ByteBuffer buffer;
+	private final int keysCount;
+	private final int root;
+	private final String[] keys;
+
+	private BinarySummary(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+		if(buffer.limit() < BinarySummaryWriter.HEADER_SIZE || buffer.getInt(0) != BinarySummaryWriter.MAGIC)
+			throw new IOException("Not a binary summary");
+		if(buffer.getInt(4) != BinarySummaryWriter.VERSION)
+			throw new IOException("Unsupported binary summary version " + buffer.getInt(4));
+
+		keysCount = buffer.getInt(8);
+		root = buffer.getInt(12);
+		if(keysCount < 0 || BinarySummaryWriter.HEADER_SIZE + 4L * (keysCount + 1) > buffer.limit()
+				|| root >= buffer.limit())
+			throw new IOException("Truncated binary summary");
+		keys = new String[keysCount];
+	}
+
+	/**
+	 * @param buffer bytes of the summary from the position 0, they must not be
+	 *               modified while the summary is used
+	 */
+	public static BinarySummary load(ByteBuffer buffer) throws IOException
+	{
+		return new BinarySummary(buffer.duplicate());
+	}
+
+	/**
+	 * Map the file in memory, the mapping stays valid once the file is closed
+	 */
+	public static BinarySummary load(Path file) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Binary summary too large");
+			return new BinarySummary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static BinarySummary load(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int n;
+		while((n = in.read(b)) != -1)
+			bytes.write(b, 0, n);
+		return new BinarySummary(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	@Override
+	public Object getData()
+	{
+		return node(root);
+	}
+
+	@Override
+	public int getRoot()
+	{
+		return root;
+	}
+
+	@Override
+	public int getKeysCount()
+	{
+		return keysCount;
+	}
+
+	@Override
+	public String getKey(int id)
+	{
+		String key = keys[id];
+		if(key == null)
+		{
+			// Course bénigne : deux threads décodent la même clé
+			int start = buffer.getInt(BinarySummaryWriter.HEADER_SIZE + 4 * id);
+			int end = buffer.getInt(BinarySummaryWriter.HEADER_SIZE + 4 * (id + 1));
+			byte[] bytes = new byte[end - start];
+			ByteBuffer b = buffer.duplicate();
+			b.position(start);
+			b.get(bytes);
+			key = new String(bytes, StandardCharsets.UTF_8);
+			keys[id] = key;
+		}
+		return key;
+	}
+
+	@Override
+	public int getKeyId(String key)
+	{
+		int low = 0;
+		int high = keysCount - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int cmp = getKey(mid).compareTo(key);
+			if(cmp < 0)
+				low = mid + 1;
+			else if(cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return NO_KEY;
+	}
+
+	/**
+	 * @return the offset of the Object of the node or {@link #NO_NODE}
+	 */
+	private int objectOf(int node)
+	{
+		if(node == NO_NODE || buffer.get(node) == BinarySummaryWriter.OBJECT)
+			return node;
+		if(buffer.getInt(node + 1) == 0)
+			return NO_NODE;
+		return buffer.getInt(node + 5);
+	}
+
+	@Override
+	public boolean isArray(int node)
+	{
+		return buffer.get(node) == BinarySummaryWriter.ARRAY;
+	}
+
+	@Override
+	public int getChildrenCount(int node)
+	{
+		int object = objectOf(node);
+		return object == NO_NODE ? 0 : buffer.getInt(object + 1);
+	}
+
+	@Override
+	public int getChildKey(int node, int i)
+	{
+		return buffer.getInt(objectOf(node) + 5 + 8 * i);
+	}
+
+	@Override
+	public int getChild(int node, int i)
+	{
+		return buffer.getInt(objectOf(node) + 9 + 8 * i);
+	}
+
+	@Override
+	public int indexOfChild(int node, int keyId)
+	{
+		int object = objectOf(node);
+		if(object == NO_NODE)
+			return -1;
+		int low = 0;
+		int high = buffer.getInt(object + 1) - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int id = buffer.getInt(object + 5 + 8 * mid);
+			if(id < keyId)
+				low = mid + 1;
+			else if(id > keyId)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private Object node(int offset)
+	{
+		if(offset == BinarySummaryWriter.NO_NODE)
+			return null;
+		if(buffer.get(offset) == BinarySummaryWriter.OBJECT)
+			return new ObjectView(offset);
+		return new ArrayView(offset);
+	}
+
+	private final class ObjectView extends AbstractMap<String, Object>
+	{
+		private final int offset;
+		private final int size;
+
+		ObjectView(int offset)
+		{
+			this.offset = offset;
+			size = buffer.getInt(offset + 1);
+		}
+
+		private int keyId(int i)
+		{
+			return buffer.getInt(offset + 5 + 8 * i);
+		}
+
+		private int child(int i)
+		{
+			return buffer.getInt(offset + 9 + 8 * i);
+		}
+
+		/**
+		 * Binary search on the children sorted by key
+		 */
+		private int indexOf(Object key)
+		{
+			if(!(key instanceof String))
+				return -1;
+			int low = 0;
+			int high = size - 1;
+			while(low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				int cmp = getKey(keyId(mid)).compareTo((String) key);
+				if(cmp < 0)
+					low = mid + 1;
+				else if(cmp > 0)
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public Object get(Object key)
+		{
+			int i = indexOf(key);
+			return i < 0 ? null : node(child(i));
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<String, Object>>()
+			{
+				@Override
+				public int size()
+				{
+					return size;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator()
+				{
+					return new Iterator<Map.Entry<String, Object>>()
+					{
+						private int i = 0;
+
+						@Override
+						public boolean hasNext()
+						{
+							return i < size;
+						}
+
+						@Override
+						public Map.Entry<String, Object> next()
+						{
+							if(i >= size)
+								throw new NoSuchElementException();
+							Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<>(getKey(keyId(i)),
+									node(child(i)));
+							i++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private final class ArrayView extends AbstractList<Object>
+	{
+		private final int offset;
+		private final int size;
+
+		ArrayView(int offset)
+		{
+			this.offset = offset;
+			size = buffer.getInt(offset + 1);
+		}
+
+		@Override
+		public Object get(int index)
+		{
+			if(index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return node(buffer.getInt(offset + 5 + 4 * index));
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+}
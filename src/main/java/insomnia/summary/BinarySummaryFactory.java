@@ -0,0 +1,72 @@
+package insomnia.summary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import insomnia.summary.Summary.Builder.RootType;
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Summary factory saving and loading the binary format of
+ * {@link BinarySummaryWriter}. The loaded summaries are read-only
+ * {@link BinarySummary}.
+ */
+public class BinarySummaryFactory extends SummaryFactory
+{
+	public BinarySummaryFactory()
+	{
+		super();
+	}
+
+	public BinarySummaryFactory(RootType rootType)
+	{
+		super(rootType);
+	}
+
+	public BinarySummaryFactory(RootType rootType, SymbolTable symbols)
+	{
+		super(rootType, symbols);
+	}
+
+	@Override
+	public BinarySummary load(InputStream in)
+	{
+		try
+		{
+			return BinarySummary.load(in);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Load without reading the file : it is mapped in memory
+	 */
+	public BinarySummary load(Path file) throws IOException
+	{
+		return BinarySummary.load(file);
+	}
+
+	@Override
+	public void save(OutputStream out, ISummary summary)
+	{
+		try
+		{
+			BinarySummaryWriter.write(out, summary);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void save(Path file, ISummary summary) throws IOException
+	{
+		BinarySummaryWriter.write(file, summary);
+	}
+}
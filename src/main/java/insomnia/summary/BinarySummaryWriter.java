@@ -0,0 +1,172 @@
+package insomnia.summary;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Writer of the binary format of a summary read by {@link BinarySummary}.
+ *
+ * <pre>
+ * header : magic, version, number of keys, offset of the root node (-1 if none)
+ * keys   : offsets of the keys (one more than the keys), UTF-8 bytes of the keys
+ * nodes  : OBJECT, count, (key id, child offset)* sorted by key id
+ *          ARRAY, count, child offset*
+ * </pre>
+ *
+ * All the numbers are big endian ints and the offsets are from the start of the
+ * file. The key ids follow the order of the keys, a key without children has the
+ * offset -1. The children are written before their parent.
+ */
+public final class BinarySummaryWriter
+{
+	static final int MAGIC = 0x534D5259;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	static final byte OBJECT = 0;
+	static final byte ARRAY = 1;
+	static final int NO_NODE = -1;
+
+	private final HashMap<String, Integer> keyIds;
+	private final List<byte[]> keys;
+	private final ByteArrayOutputStream nodesBytes;
+	private final DataOutputStream nodes;
+	private int nodesBase;
+
+	private BinarySummaryWriter()
+	{
+		keyIds = new HashMap<>();
+		keys = new ArrayList<>();
+		nodesBytes = new ByteArrayOutputStream();
+		nodes = new DataOutputStream(nodesBytes);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the data of the summary is invalid
+	 */
+	public static void write(OutputStream out, ISummary summary) throws IOException
+	{
+		new BinarySummaryWriter().writeSummary(out, summary.getData());
+	}
+
+	public static void write(Path file, ISummary summary) throws IOException
+	{
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file)))
+		{
+			write(out, summary);
+		}
+	}
+
+	private void writeSummary(OutputStream out, Object data) throws IOException
+	{
+		// Dictionnaire trié : l'ordre des identifiants est celui des clés
+		TreeSet<String> sortedKeys = new TreeSet<>();
+		collectKeys(data, sortedKeys);
+		for(String key : sortedKeys)
+		{
+			keyIds.put(key, keys.size());
+			keys.add(key.getBytes(StandardCharsets.UTF_8));
+		}
+
+		int keysSize = 4 * (keys.size() + 1);
+		for(byte[] key : keys)
+			keysSize += key.length;
+		nodesBase = HEADER_SIZE + keysSize;
+		int root = writeNode(data);
+
+		DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(VERSION);
+		dataOut.writeInt(keys.size());
+		dataOut.writeInt(root);
+
+		int offset = HEADER_SIZE + 4 * (keys.size() + 1);
+		for(byte[] key : keys)
+		{
+			dataOut.writeInt(offset);
+			offset += key.length;
+		}
+		dataOut.writeInt(offset);
+		for(byte[] key : keys)
+			dataOut.write(key);
+
+		nodesBytes.writeTo(dataOut);
+		dataOut.flush();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectKeys(Object data, TreeSet<String> sortedKeys)
+	{
+		if(data instanceof Map)
+		{
+			for(Map.Entry<String, Object> entry : ((Map<String, Object>) data).entrySet())
+			{
+				sortedKeys.add(entry.getKey());
+				collectKeys(entry.getValue(), sortedKeys);
+			}
+		}
+		else if(data instanceof List)
+		{
+			for(Object elt : (List<Object>) data)
+				collectKeys(elt, sortedKeys);
+		}
+	}
+
+	/**
+	 * @return the offset of the node
+	 */
+	@SuppressWarnings("unchecked")
+	private int writeNode(Object data) throws IOException
+	{
+		if(data == null)
+			return NO_NODE;
+
+		if(data instanceof Map)
+		{
+			Map<String, Object> object = (Map<String, Object>) data;
+			long[] children = new long[object.size()];
+			int i = 0;
+			for(Map.Entry<String, Object> entry : object.entrySet())
+				children[i++] = ((long) keyIds.get(entry.getKey()) << 32) | (writeNode(entry.getValue()) & 0xFFFFFFFFL);
+			Arrays.sort(children);
+
+			int offset = nodesBase + nodes.size();
+			nodes.writeByte(OBJECT);
+			nodes.writeInt(children.length);
+			for(long child : children)
+			{
+				nodes.writeInt((int) (child >>> 32));
+				nodes.writeInt((int) child);
+			}
+			return offset;
+		}
+		else if(data instanceof List)
+		{
+			List<Object> array = (List<Object>) data;
+			if(array.size() > 1 || (array.size() == 1 && !(array.get(0) instanceof Map)))
+				throw new IllegalArgumentException("Invalid summary data: an Array must contain a single Object");
+
+			int child = array.isEmpty() ? NO_NODE : writeNode(array.get(0));
+			int offset = nodesBase + nodes.size();
+			nodes.writeByte(ARRAY);
+			nodes.writeInt(array.size());
+			if(!array.isEmpty())
+				nodes.writeInt(child);
+			return offset;
+		}
+		else
+			throw new IllegalArgumentException("Invalid summary data: " + data.getClass().getName());
+	}
+}
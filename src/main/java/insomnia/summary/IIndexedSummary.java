@@ -0,0 +1,44 @@
+package insomnia.summary;
+
+/**
+ * Summary whose nodes and keys are ints.
+ * The keys are interned in a dictionary sorted by String order, a node is an
+ * Object or an Array and its children are sorted by key id. The Array nodes are
+ * transparent : their children are those of the Object they contain.
+ */
+public interface IIndexedSummary extends ISummary
+{
+	/**
+	 * Node of a key without children and root of an empty summary
+	 */
+	public static final int NO_NODE = -1;
+
+	public static final int NO_KEY = -1;
+
+	public int getRoot();
+
+	public int getKeysCount();
+
+	public String getKey(int keyId);
+
+	/**
+	 * @return the id of the key or {@link #NO_KEY} if it is not in the summary
+	 */
+	public int getKeyId(String key);
+
+	public boolean isArray(int node);
+
+	public int getChildrenCount(int node);
+
+	public int getChildKey(int node, int i);
+
+	/**
+	 * @return the i-th child or {@link #NO_NODE}
+	 */
+	public int getChild(int node, int i);
+
+	/**
+	 * @return the index of the child with this key or -1
+	 */
+	public int indexOfChild(int node, int keyId);
+}
@@ -1,10 +1,17 @@
 package insomnia.summary;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+
+import insomnia.json.JsonEvent;
+import insomnia.json.JsonParser;
+import insomnia.symbol.SymbolTable;
 
 public final class Summary implements ISummary
 {
@@ -14,6 +21,7 @@ public final class Summary implements ISummary
 	{
 		Object root;
 		ArrayDeque<Object> dataStack;
+		SymbolTable symbols;
 
 		public class BuilderException extends Exception
 		{
@@ -42,6 +50,16 @@ public final class Summary implements ISummary
 
 		public Builder(RootType type)
 		{
+			this(type, null);
+		}
+
+		/**
+		 * @param symbols table interning the keys of the summary, null to keep the
+		 *                given keys
+		 */
+		public Builder(RootType type, SymbolTable symbols)
+		{
+			this.symbols = symbols;
 			dataStack = new ArrayDeque<>();
 			if(type == RootType.OBJECT)
 				root = new HashMap<>();
@@ -52,6 +70,11 @@ public final class Summary implements ISummary
 				dataStack.push(root);
 		}
 
+		private String symbol(String key)
+		{
+			return symbols == null ? key : symbols.canonical(key);
+		}
+
 		public boolean goBack()
 		{
 			if(dataStack.size() > 1)
@@ -70,6 +93,8 @@ public final class Summary implements ISummary
 			if(!(dataStack.peek() instanceof Map))
 				throw new BuilderException("The current element is not an Object");
 
+			key = symbol(key);
+
 			Map<String, Object> map = (Map<String, Object>) dataStack.peek();
 
 			if(!map.containsKey(key))
@@ -85,6 +110,8 @@ public final class Summary implements ISummary
 			if(!(dataStack.peek() instanceof Map))
 				throw new BuilderException("The current element is not an Object");
 
+			key = symbol(key);
+
 			Map<String, Object> object = (Map<String, Object>) dataStack.peek();
 			
 			Object oldValue = object.get(key);
@@ -109,6 +136,8 @@ public final class Summary implements ISummary
 			if(!(dataStack.peek() instanceof Map))
 				throw new BuilderException("The current element is not an Object");
 
+			key = symbol(key);
+
 			Map<String, Object> object = (Map<String, Object>) dataStack.peek();
 
 			Object oldValue = object.get(key);
@@ -155,6 +184,220 @@ public final class Summary implements ISummary
 			return this;
 		}
 
+		/**
+		 * Add a json document from its events, without building its tree.
+		 * The document is added at the root of the summary, nested arrays are
+		 * transparent and the values of an array are merged into its single
+		 * object.
+		 * 
+		 * @param document reader positioned before the first event of the
+		 *                 document
+		 */
+		public Builder addJson(JsonParser.EventReader document) throws ParseException, IOException, BuilderException
+		{
+			while(goBack())
+				;
+
+			JsonEvent event = document.nextEvent();
+			if(event == JsonEvent.START_OBJECT)
+				checkRoot(Map.class);
+			else if(event == JsonEvent.START_ARRAY)
+				checkRoot(List.class);
+			else
+				// Une valeur simple n'apporte aucune clé
+				return this;
+
+			// Conteneurs ouverts : un tableau imbriqué dans un tableau n'a pas de niveau dans le résumé
+			ArrayDeque<JsonEvent> containers = new ArrayDeque<>();
+			ArrayDeque<Boolean> levels = new ArrayDeque<>();
+			containers.push(event);
+			levels.push(false);
+			String key = null;
+
+			while(!containers.isEmpty())
+			{
+				event = document.nextEvent();
+				boolean inObject = containers.peek() == JsonEvent.START_OBJECT;
+				switch(event)
+				{
+				case KEY:
+					key = document.getString();
+					break;
+				case START_OBJECT:
+					if(inObject)
+						addObject(key);
+					else
+						addObject();
+					containers.push(event);
+					levels.push(true);
+					break;
+				case START_ARRAY:
+					if(inObject)
+						addArray(key);
+					containers.push(event);
+					levels.push(inObject);
+					break;
+				case END_OBJECT:
+				case END_ARRAY:
+					containers.pop();
+					if(levels.pop())
+						goBack();
+					break;
+				case END_DOCUMENT:
+					throw new ParseException("Unexpected end of the document", document.getErrorOffset());
+				default:
+					if(inObject)
+						addKey(key);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Add a json document tree (Map, List or simple value) at the root of the
+		 * summary.
+		 */
+		@SuppressWarnings("unchecked")
+		public Builder addJson(Object jsonData) throws BuilderException
+		{
+			while(goBack())
+				;
+
+			if(jsonData instanceof Map)
+			{
+				checkRoot(Map.class);
+				addJsonObject((Map<String, Object>) jsonData);
+			}
+			else if(jsonData instanceof List)
+			{
+				checkRoot(List.class);
+				addJsonArray((List<Object>) jsonData);
+			}
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addJsonObject(Map<String, Object> object) throws BuilderException
+		{
+			for(Entry<String, Object> entry : object.entrySet())
+			{
+				Object value = entry.getValue();
+				if(value instanceof Map)
+				{
+					addObject(entry.getKey());
+					addJsonObject((Map<String, Object>) value);
+					goBack();
+				}
+				else if(value instanceof List)
+				{
+					addArray(entry.getKey());
+					addJsonArray((List<Object>) value);
+					goBack();
+				}
+				else
+					addKey(entry.getKey());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addJsonArray(List<Object> array) throws BuilderException
+		{
+			for(Object value : array)
+			{
+				if(value instanceof Map)
+				{
+					addObject();
+					addJsonObject((Map<String, Object>) value);
+					goBack();
+				}
+				else if(value instanceof List)
+					addJsonArray((List<Object>) value);
+			}
+		}
+
+		/**
+		 * Merge a summary into this one, the datas of the summary are copied.
+		 * Used to combine partial summaries built on separate threads.
+		 */
+		@SuppressWarnings("unchecked")
+		public Builder merge(ISummary summary) throws BuilderException
+		{
+			Object data = summary.getData();
+			if(data instanceof Map)
+			{
+				checkRoot(Map.class);
+				mergeObject((Map<String, Object>) root, (Map<String, Object>) data);
+			}
+			else if(data instanceof List)
+			{
+				checkRoot(List.class);
+				mergeArray((List<Object>) root, (List<Object>) data);
+			}
+			else if(data != null)
+				throw new BuilderException("Invalid summary data: " + data.getClass().getName());
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void mergeObject(Map<String, Object> into, Map<String, Object> from) throws BuilderException
+		{
+			for(Entry<String, Object> entry : from.entrySet())
+			{
+				String key = symbol(entry.getKey());
+				Object value = entry.getValue();
+				Object oldValue = into.get(key);
+
+				if(value instanceof Map)
+				{
+					if(oldValue instanceof List)
+						throw new BuilderException("Inconsistent datas: same key '" + key + "' has type Array and Object");
+					else if(oldValue == null)
+					{
+						oldValue = new HashMap<String, Object>();
+						into.put(key, oldValue);
+					}
+					mergeObject((Map<String, Object>) oldValue, (Map<String, Object>) value);
+				}
+				else if(value instanceof List)
+				{
+					if(oldValue instanceof Map)
+						throw new BuilderException("Inconsistent datas: same key '" + key + "' has type Object and Array");
+					else if(oldValue == null)
+					{
+						oldValue = new ArrayList<Object>();
+						into.put(key, oldValue);
+					}
+					mergeArray((List<Object>) oldValue, (List<Object>) value);
+				}
+				else if(value == null)
+				{
+					if(!into.containsKey(key))
+						into.put(key, null);
+				}
+				else
+					throw new BuilderException("Invalid summary data for the key '" + key + "'");
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void mergeArray(List<Object> into, List<Object> from) throws BuilderException
+		{
+			if(from.isEmpty())
+				return;
+			if(from.size() > 1 || !(from.get(0) instanceof Map))
+				throw new BuilderException("Invalid summary data: an Array must contain a single Object");
+
+			if(into.isEmpty())
+				into.add(new HashMap<String, Object>());
+			mergeObject((Map<String, Object>) into.get(0), (Map<String, Object>) from.get(0));
+		}
+
+		private void checkRoot(Class<?> type) throws BuilderException
+		{
+			if(!type.isInstance(root))
+				throw new BuilderException("Inconsistent datas: the root is not an " + (type == Map.class ? "Object" : "Array"));
+		}
+
 		public Summary build()
 		{
 			return new Summary(this);
@@ -0,0 +1,222 @@
+package insomnia.summary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import insomnia.json.IJsonFolder;
+import insomnia.json.JsonLinesReader;
+import insomnia.json.JsonParser;
+import insomnia.json.JsonWriter;
+import insomnia.summary.Summary.Builder;
+import insomnia.summary.Summary.Builder.BuilderException;
+import insomnia.summary.Summary.Builder.RootType;
+import insomnia.symbol.SymbolTable;
+
+/**
+ * Factory folding json documents into a single summary.
+ * The documents are read as parser events, their trees are never built, and
+ * the lines of a json lines input are folded in parallel into partial summaries
+ * which are then merged.
+ * The text format of a summary is its json data.
+ */
+public class SummaryFactory implements ISummaryFactory
+{
+	private final RootType rootType;
+	private final SymbolTable symbols;
+	private final JsonParser parser;
+
+	public SummaryFactory()
+	{
+		this(RootType.OBJECT);
+	}
+
+	/**
+	 * @param rootType type of the root of the documents
+	 */
+	public SummaryFactory(RootType rootType)
+	{
+		this(rootType, null);
+	}
+
+	/**
+	 * @param symbols table interning the keys of the documents and of the
+	 *                summaries, null to keep the keys as they are read
+	 */
+	public SummaryFactory(RootType rootType, SymbolTable symbols)
+	{
+		this.rootType = rootType;
+		this.symbols = symbols;
+		parser = new JsonParser(symbols);
+	}
+
+	/**
+	 * @param datas json document trees
+	 * @throws IllegalArgumentException if the documents are inconsistent
+	 */
+	@Override
+	public Summary generate(Iterable<? extends Object> datas)
+	{
+		Builder builder = new Builder(rootType, symbols);
+		try
+		{
+			for(Object data : datas)
+				builder.addJson(data);
+		}
+		catch(BuilderException e)
+		{
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Summary of a single json document read from a stream
+	 */
+	public Summary generate(InputStream jsonStream) throws ParseException, IOException, BuilderException
+	{
+		return new Builder(rootType, symbols).addJson(parser.newEventReader(jsonStream)).build();
+	}
+
+	public Summary generate(Path jsonFile) throws ParseException, IOException, BuilderException
+	{
+		try(JsonParser.EventReader reader = parser.newEventReader(jsonFile))
+		{
+			return new Builder(rootType, symbols).addJson(reader).build();
+		}
+	}
+
+	/**
+	 * Summary of the documents of a json lines stream, folded in parallel
+	 *
+	 * @throws ParseException if a line is invalid or inconsistent with the
+	 *                        others
+	 */
+	public Summary generateFromJsonLines(InputStream jsonStream, JsonLinesReader reader) throws ParseException, IOException
+	{
+		try
+		{
+			return reader.foldJsonLines(jsonStream, newBuilder(), folder(), SummaryFactory::combine).build();
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw combineException(e);
+		}
+	}
+
+	public Summary generateFromJsonLines(Path jsonFile, JsonLinesReader reader) throws ParseException, IOException
+	{
+		try
+		{
+			return reader.foldJsonLines(jsonFile, newBuilder(), folder(), SummaryFactory::combine).build();
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw combineException(e);
+		}
+	}
+
+	public Summary generateFromJsonLines(Path jsonFile) throws ParseException, IOException
+	{
+		return generateFromJsonLines(jsonFile, new JsonLinesReader());
+	}
+
+	private Supplier<Builder> newBuilder()
+	{
+		return () -> new Builder(rootType, symbols);
+	}
+
+	private static IJsonFolder<Builder> folder()
+	{
+		return (builder, document) -> {
+			try
+			{
+				builder.addJson(document);
+			}
+			catch(BuilderException e)
+			{
+				throw new ParseException(e.getMessage(), document.getErrorOffset());
+			}
+		};
+	}
+
+	/**
+	 * Merge the partial summary of the following part of the input
+	 */
+	private static Builder combine(Builder a, Builder b)
+	{
+		try
+		{
+			return a.merge(b.build());
+		}
+		catch(BuilderException e)
+		{
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The position of an inconsistency between two partial summaries is unknown
+	 */
+	private static ParseException combineException(IllegalArgumentException e)
+	{
+		if(!(e.getCause() instanceof BuilderException))
+			throw e;
+
+		ParseException parseException = new ParseException(e.getMessage() + " between two parts of the input", 0);
+		parseException.initCause(e.getCause());
+		return parseException;
+	}
+
+	/**
+	 * Merge summaries into a new one, the summaries are not modified
+	 *
+	 * @throws BuilderException if the summaries are inconsistent
+	 */
+	public Summary merge(ISummary... summaries) throws BuilderException
+	{
+		Builder builder = new Builder(rootType, symbols);
+		for(ISummary summary : summaries)
+			builder.merge(summary);
+		return builder.build();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the stream is not a valid summary
+	 */
+	@Override
+	public ISummary load(InputStream in)
+	{
+		try
+		{
+			Object data = parser.readJsonStream(in);
+			return new Builder(data instanceof List ? RootType.ARRAY : RootType.OBJECT, symbols).merge(() -> data).build();
+		}
+		catch(ParseException | BuilderException e)
+		{
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void save(OutputStream out, ISummary summary)
+	{
+		try
+		{
+			JsonWriter.writeJson(out, summary.getData(), true);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+}
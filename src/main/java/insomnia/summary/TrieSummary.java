@@ -0,0 +1,228 @@
+package insomnia.summary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Compact summary stored as a trie of int arrays.
+ * The nodes are numbered in breadth first order (the root is 0), the children
+ * of the node n are in [childOffsets[n], childOffsets[n + 1][ sorted by key id,
+ * and a key without children has no node. Arrays are a flag of the node of
+ * their Object.
+ */
+public final class TrieSummary implements IIndexedSummary
+{
+	private static final byte OBJECT = 0;
+	private static final byte ARRAY = 1;
+	private static final byte EMPTY_ARRAY = 2;
+
+	private final String[] keys;
+	private final byte[] types;
+	private final int[] childOffsets;
+	private final int[] childKeys;
+	private final int[] children;
+
+	@SuppressWarnings("unchecked")
+	public TrieSummary(ISummary summary)
+	{
+		Object data = summary.getData();
+
+		TreeSet<String> sortedKeys = new TreeSet<>();
+		int nbChildren = collectKeys(data, sortedKeys);
+		keys = sortedKeys.toArray(new String[sortedKeys.size()]);
+		childKeys = new int[nbChildren];
+		children = new int[nbChildren];
+
+		// Parcours en largeur : les identifiants des noeuds suivent l'ordre de la file
+		List<Object> nodes = new ArrayList<>();
+		if(data != null)
+			nodes.add(data);
+		int c = 0;
+		for(int n = 0; n < nodes.size(); n++)
+		{
+			Map<String, Object> object = objectOf(nodes.get(n));
+			if(object == null)
+				continue;
+
+			long[] sorted = new long[object.size()];
+			Object[] values = new Object[object.size()];
+			int i = 0;
+			for(Map.Entry<String, Object> entry : object.entrySet())
+			{
+				sorted[i] = ((long) Arrays.binarySearch(keys, entry.getKey()) << 32) | i;
+				values[i++] = entry.getValue();
+			}
+			Arrays.sort(sorted);
+			for(long s : sorted)
+			{
+				Object value = values[(int) s];
+				childKeys[c] = (int) (s >>> 32);
+				if(value == null)
+					children[c] = NO_NODE;
+				else
+				{
+					children[c] = nodes.size();
+					nodes.add(value);
+				}
+				c++;
+			}
+		}
+
+		int n = nodes.size();
+		types = new byte[n];
+		childOffsets = new int[n + 1];
+		c = 0;
+		for(int node = 0; node < n; node++)
+		{
+			Object value = nodes.get(node);
+			if(value instanceof List)
+				types[node] = ((List<Object>) value).isEmpty() ? EMPTY_ARRAY : ARRAY;
+			else
+				types[node] = OBJECT;
+
+			childOffsets[node] = c;
+			Map<String, Object> object = objectOf(value);
+			if(object != null)
+				c += object.size();
+		}
+		childOffsets[n] = c;
+	}
+
+	/**
+	 * @return the Object designated by the node of the value, null for an empty
+	 *         Array
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> objectOf(Object value)
+	{
+		if(value instanceof Map)
+			return (Map<String, Object>) value;
+		else if(value instanceof List)
+		{
+			List<Object> array = (List<Object>) value;
+			if(array.isEmpty())
+				return null;
+			if(array.size() > 1 || !(array.get(0) instanceof Map))
+				throw new IllegalArgumentException("Invalid summary data: an Array must contain a single Object");
+			return (Map<String, Object>) array.get(0);
+		}
+		else
+			throw new IllegalArgumentException("Invalid summary data: " + value.getClass().getName());
+	}
+
+	/**
+	 * @return the number of children of the tree
+	 */
+	private static int collectKeys(Object value, TreeSet<String> sortedKeys)
+	{
+		if(value == null)
+			return 0;
+		Map<String, Object> object = objectOf(value);
+		if(object == null)
+			return 0;
+
+		int nbChildren = object.size();
+		for(Map.Entry<String, Object> entry : object.entrySet())
+		{
+			sortedKeys.add(entry.getKey());
+			nbChildren += collectKeys(entry.getValue(), sortedKeys);
+		}
+		return nbChildren;
+	}
+
+	/**
+	 * Build the Map and List tree of the summary
+	 */
+	@Override
+	public Object getData()
+	{
+		return types.length == 0 ? null : getData(0);
+	}
+
+	private Object getData(int node)
+	{
+		if(types[node] == EMPTY_ARRAY)
+			return new ArrayList<Object>();
+
+		HashMap<String, Object> object = new HashMap<>();
+		for(int i = childOffsets[node]; i < childOffsets[node + 1]; i++)
+			object.put(keys[childKeys[i]], children[i] == NO_NODE ? null : getData(children[i]));
+
+		if(types[node] == ARRAY)
+		{
+			ArrayList<Object> array = new ArrayList<>();
+			array.add(object);
+			return array;
+		}
+		return object;
+	}
+
+	@Override
+	public int getRoot()
+	{
+		return types.length == 0 ? NO_NODE : 0;
+	}
+
+	public int getNodesCount()
+	{
+		return types.length;
+	}
+
+	@Override
+	public int getKeysCount()
+	{
+		return keys.length;
+	}
+
+	@Override
+	public String getKey(int keyId)
+	{
+		return keys[keyId];
+	}
+
+	@Override
+	public int getKeyId(String key)
+	{
+		int id = Arrays.binarySearch(keys, key);
+		return id < 0 ? NO_KEY : id;
+	}
+
+	@Override
+	public boolean isArray(int node)
+	{
+		return types[node] != OBJECT;
+	}
+
+	@Override
+	public int getChildrenCount(int node)
+	{
+		if(node == NO_NODE)
+			return 0;
+		return childOffsets[node + 1] - childOffsets[node];
+	}
+
+	@Override
+	public int getChildKey(int node, int i)
+	{
+		return childKeys[childOffsets[node] + i];
+	}
+
+	@Override
+	public int getChild(int node, int i)
+	{
+		return children[childOffsets[node] + i];
+	}
+
+	@Override
+	public int indexOfChild(int node, int keyId)
+	{
+		if(node == NO_NODE)
+			return -1;
+		int pos = Arrays.binarySearch(childKeys, childOffsets[node], childOffsets[node + 1], keyId);
+		return pos < 0 ? -1 : pos - childOffsets[node];
+	}
+}
@@ -0,0 +1,187 @@
+package insomnia.symbol;
+
+/**
+ * Table of the keys : a key is interned once, as a canonical String and an int
+ * symbol (the symbols are numbered from 0 in the order of interning).
+ * The parser, the summaries and the automata sharing a table share the same
+ * key instances, so comparing two keys is an identity test.
+ * The lookups are lock free and a known key is found from the characters
+ * without creating a String ; only the interning of a new key is synchronized.
+ */
+public final class SymbolTable
+{
+	public static final int NO_SYMBOL = -1;
+
+	private static final SymbolTable GLOBAL = new SymbolTable();
+
+	private static final class Entry
+	{
+		final String name;
+		final int symbol;
+		final int hash;
+		final Entry next;
+
+		Entry(String name, int symbol, int hash, Entry next)
+		{
+			this.name = name;
+			this.symbol = symbol;
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	// Les entrées sont immuables : une lecture concurrente voit une liste valide
+	private volatile Entry[] buckets;
+	private volatile String[] names;
+	private int size;
+
+	public SymbolTable()
+	{
+		buckets = new Entry[64];
+		names = new String[64];
+		size = 0;
+	}
+
+	/**
+	 * @return a table for the whole application, it is never emptied
+	 */
+	public static SymbolTable getGlobal()
+	{
+		return GLOBAL;
+	}
+
+	/**
+	 * Same hash as {@link String#hashCode()}
+	 */
+	private static int hash(CharSequence s)
+	{
+		if(s instanceof String)
+			return s.hashCode();
+		int h = 0;
+		for(int i = 0, n = s.length(); i < n; i++)
+			h = 31 * h + s.charAt(i);
+		return h;
+	}
+
+	private static boolean equals(String name, CharSequence s)
+	{
+		return name == s || name.contentEquals(s);
+	}
+
+	private static Entry find(Entry[] buckets, CharSequence s, int hash)
+	{
+		for(Entry e = buckets[hash & (buckets.length - 1)]; e != null; e = e.next)
+		{
+			if(e.hash == hash && equals(e.name, s))
+				return e;
+		}
+		return null;
+	}
+
+	private Entry entry(CharSequence s)
+	{
+		int hash = hash(s);
+		Entry e = find(buckets, s, hash);
+		if(e != null)
+			return e;
+
+		synchronized(this)
+		{
+			Entry[] b = buckets;
+			e = find(b, s, hash);
+			if(e != null)
+				return e;
+
+			if(size >= b.length / 4 * 3)
+				b = resize(b);
+			String name = s.toString();
+			int i = hash & (b.length - 1);
+			e = new Entry(name, size, hash, b[i]);
+
+			String[] n = names;
+			if(size == n.length)
+			{
+				String[] larger = new String[n.length * 2];
+				System.arraycopy(n, 0, larger, 0, size);
+				n = larger;
+			}
+			n[size++] = name;
+			names = n;
+
+			b[i] = e;
+			buckets = b;
+			return e;
+		}
+	}
+
+	private static Entry[] resize(Entry[] old)
+	{
+		Entry[] b = new Entry[old.length * 2];
+		for(Entry head : old)
+		{
+			for(Entry e = head; e != null; e = e.next)
+			{
+				int i = e.hash & (b.length - 1);
+				b[i] = new Entry(e.name, e.symbol, e.hash, b[i]);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * @return the symbol of the key, interned if it is new
+	 */
+	public int intern(CharSequence key)
+	{
+		return entry(key).symbol;
+	}
+
+	/**
+	 * @return the canonical instance of the key, interned if it is new
+	 */
+	public String canonical(CharSequence key)
+	{
+		return entry(key).name;
+	}
+
+	/**
+	 * @return the symbol of the key or {@link #NO_SYMBOL} if it is not interned,
+	 *         the table is never extended
+	 */
+	public int getSymbol(CharSequence key)
+	{
+		int hash = hash(key);
+		Entry e = find(buckets, key, hash);
+		if(e == null)
+		{
+			// L'entrée a pu être ajoutée sans que ce thread la voie encore
+			synchronized(this)
+			{
+				e = find(buckets, key, hash);
+			}
+		}
+		return e == null ? NO_SYMBOL : e.symbol;
+	}
+
+	/**
+	 * @return the key of the symbol
+	 */
+	public String getKey(int symbol)
+	{
+		String[] n = names;
+		if(symbol >= 0 && symbol < n.length && n[symbol] != null)
+			return n[symbol];
+
+		synchronized(this)
+		{
+			if(symbol < 0 || symbol >= size)
+				throw new IndexOutOfBoundsException("Unknown symbol " + symbol);
+			return names[symbol];
+		}
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,138 @@
+package automaton.edge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import insomnia.automaton.edge.EdgeRegex;
+import insomnia.automaton.edge.MatchCache;
+import insomnia.automaton.edge.RegexPrefilter;
+import insomnia.automaton.state.State;
+
+class TestEdgeRegex
+{
+	private static final String[] atoms = { "a", "b", "ab", ".", "[ab]", "[^a]", "\\d", "(a|b)", "(ab|a)", "(?:ba)",
+			"\\.", "^", "$", "\\b", "(?=a)", "(?!b)", "(?>a|ab)", "\\1", "é" };
+	private static final String[] quantifiers = { "", "", "*", "+", "?", "{2}", "{1,3}", "{2,}", "*?", "++" };
+	private static final String alphabet = "abx.é1";
+
+	private static EdgeRegex edge(String regex)
+	{
+		return new EdgeRegex(new State(0, true, false), new State(1, false, true), regex);
+	}
+
+	@Test
+	void prefix()
+	{
+		RegexPrefilter prefilter = RegexPrefilter.analyze("user_[0-9]+");
+		assertEquals("user_", prefilter.getPrefix());
+		assertEquals(6, prefilter.getMinLength());
+		assertEquals(RegexPrefilter.UNBOUNDED, prefilter.getMaxLength());
+		assertFalse(prefilter.isExact());
+		assertFalse(prefilter.mayMatch("name"));
+		assertTrue(prefilter.mayMatch("user_x"));
+	}
+
+	@Test
+	void suffix()
+	{
+		RegexPrefilter prefilter = RegexPrefilter.analyze("[a-z]+(_id|_uid)");
+		assertEquals("", prefilter.getPrefix());
+		assertEquals("id", prefilter.getSuffix());
+		assertEquals(4, prefilter.getMinLength());
+		assertFalse(prefilter.mayMatch("user"));
+	}
+
+	@Test
+	void literals()
+	{
+		RegexPrefilter prefilter = RegexPrefilter.analyze("ab(c|d)|e{1,2}");
+		assertTrue(prefilter.isExact());
+		assertEquals(new HashSet<>(Arrays.asList("abc", "abd", "e", "ee")), prefilter.getLiterals());
+		assertFalse(prefilter.mayMatch("abe"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "(?i)abc", "\\Qa.b\\E", "(?x)a b" })
+	void unsupported(String regex)
+	{
+		RegexPrefilter prefilter = RegexPrefilter.analyze(regex);
+		assertFalse(prefilter.isExact());
+		assertNull(prefilter.getLiterals());
+		assertTrue(prefilter.mayMatch("ABC"));
+	}
+
+	@Test
+	void matchCache()
+	{
+		MatchCache cache = new MatchCache(2);
+		assertTrue(cache.test("a", s -> true));
+		assertTrue(cache.test("a", s -> false));
+		assertFalse(cache.test("b", s -> false));
+		assertEquals(2, cache.size());
+		assertFalse(cache.test("c", s -> false));
+		assertEquals(1, cache.getFlushCount());
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+
+		EdgeRegex edge = new EdgeRegex(new State(0, true, false), new State(1, false, true), "user_[0-9]+", 8);
+		assertTrue(edge.isValid("user_12"));
+		assertTrue(edge.isValid("user_12"));
+		assertFalse(edge.isValid("name"));
+		assertEquals(1, edge.getMatchCache().getHits());
+		assertEquals(1, edge.getMatchCache().getMisses());
+
+		// Le filtre suffit pour un ensemble de littéraux
+		assertNull(new EdgeRegex(new State(0, true, false), new State(1, false, true), "ab|cd", 8).getMatchCache());
+	}
+
+	@Test
+	void sameAsPattern()
+	{
+		// L'arête doit donner le résultat de la regex sur des regex aléatoires
+		Random random = new Random(0);
+		for(int i = 0; i < 2000; i++)
+		{
+			StringBuilder regex = new StringBuilder();
+			int nb = 1 + random.nextInt(4);
+			for(int j = 0; j < nb; j++)
+			{
+				regex.append(atoms[random.nextInt(atoms.length)]);
+				regex.append(quantifiers[random.nextInt(quantifiers.length)]);
+				if(random.nextInt(6) == 0)
+					regex.append('|');
+			}
+			Pattern pattern;
+			try
+			{
+				pattern = Pattern.compile(regex.toString());
+			}
+			catch(Exception e)
+			{
+				continue;
+			}
+			EdgeRegex edge = edge(regex.toString());
+
+			for(int t = 0; t < 20; t++)
+			{
+				StringBuilder element = new StringBuilder();
+				int length = random.nextInt(6);
+				for(int j = 0; j < length; j++)
+					element.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				assertEquals(pattern.matcher(element).matches(), edge.isValid(element.toString()),
+						regex + " on " + element);
+			}
+		}
+	}
+}
@@ -5,14 +5,39 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import insomnia.automaton.AutomatonException;
+import insomnia.io.MappedInputStream;
+import insomnia.json.IJsonHandler;
+import insomnia.json.JsonEvent;
+import insomnia.json.JsonLinesReader;
 import insomnia.json.JsonParser;
+import insomnia.json.JsonParser.EventReader;
 import insomnia.json.JsonValueExtractor;
 import insomnia.json.JsonWriter;
+import insomnia.regex.RegexParser;
+import insomnia.regex.automaton.JsonStreamMatcher;
+import insomnia.regex.automaton.RegexAutomaton;
+import insomnia.regex.automaton.RegexAutomatonBuilder;
+import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
+import insomnia.regex.automaton.TableRegexAutomaton;
+import insomnia.symbol.SymbolTable;
 
 class TestJson
 {
@@ -129,4 +154,365 @@ class TestJson
 		assertEquals("Pouet", values.get(0));
 		assertEquals(true, values.get(1));
 	}
+
+	@Test
+	void unicode() throws ParseException, IOException
+	{
+		String jsonData = "{\"cl\u00e9\":\"\u20ac \ud83d\ude00\",\"esc\":\"\\\"\\\\\\/\\n\\t\\u00e9\\ud83d\\ude00\"}";
+		LinkedHashMap<?, ?> data = (LinkedHashMap<?, ?>) parser
+				.readJsonStream(new ByteArrayInputStream(jsonData.getBytes(StandardCharsets.UTF_8)));
+		assertEquals("\u20ac \ud83d\ude00", data.get("cl\u00e9"));
+		assertEquals("\"\\/\n\t\u00e9\ud83d\ude00", data.get("esc"));
+
+		// Séquences UTF-8 invalides : octet de continuation isolé, encodage trop long
+		assertThrows(ParseException.class,
+				() -> parser.readJsonStream(new ByteArrayInputStream(new byte[] { '"', (byte) 0x80, '"' })));
+		assertThrows(ParseException.class,
+				() -> parser.readJsonStream(new ByteArrayInputStream(new byte[] { '"', (byte) 0xc0, (byte) 0xaf, '"' })));
+	}
+
+	@Test
+	void largeDocument() throws ParseException, IOException
+	{
+		// Les jetons sont à cheval sur plusieurs fenêtres de lecture
+		StringBuilder jsonData = new StringBuilder("[");
+		for(int i = 0; i < 5000; i++)
+			jsonData.append(i == 0 ? "" : ",").append("{\"k\u00e9").append(i).append("\":-12.5e-1}");
+		jsonData.append("]");
+		List<?> data = (List<?>) parser
+				.readJsonStream(new ByteArrayInputStream(jsonData.toString().getBytes(StandardCharsets.UTF_8)));
+		assertEquals(5000, data.size());
+		assertEquals(-1.25, ((LinkedHashMap<?, ?>) data.get(4999)).get("k\u00e94999"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "0", "-0", "1.50", "1e05", "-12.5E+3", "10.0e-2" })
+	void number(String number) throws ParseException, IOException
+	{
+		assertEquals(Double.parseDouble(number), parser.readJsonStream(new ByteArrayInputStream(number.getBytes())));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "01", "1.", "-", "1e", "1.e5", ".5", "1-2", "1e+" })
+	void numberNot(String number)
+	{
+		assertThrows(ParseException.class, () -> parser.readJsonStream(new ByteArrayInputStream(number.getBytes())),
+				"Invalid number syntax '" + number + "'");
+	}
+
+	@Test
+	void mappedFile() throws ParseException, IOException
+	{
+		String jsonData = "{\"cl\u00e9\":[1.0,{\"k\":\"\u20ac\"},null],\"key\":{\"object\":\"blabla\"}}";
+		Object expected = parser.readJsonStream(new ByteArrayInputStream(jsonData.getBytes(StandardCharsets.UTF_8)));
+		Path file = Files.createTempFile("json", ".json");
+		try
+		{
+			Files.write(file, jsonData.getBytes(StandardCharsets.UTF_8));
+			assertEquals(expected, parser.readJsonStream(file));
+
+			// Petits morceaux : les jetons sont à cheval sur plusieurs projections
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				assertEquals(expected, parser.readJsonStream(new MappedInputStream(channel, 3)));
+				assertTrue(channel.isOpen());
+			}
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void pullEvents() throws ParseException, IOException
+	{
+		String jsonData = "{\"key\":[1.5,\"s\",true,null],\"o\":{}}";
+		EventReader reader = parser.newEventReader(new ByteArrayInputStream(jsonData.getBytes()));
+		JsonEvent[] expected = { JsonEvent.START_OBJECT, JsonEvent.KEY, JsonEvent.START_ARRAY, JsonEvent.VALUE_NUMBER,
+				JsonEvent.VALUE_STRING, JsonEvent.VALUE_TRUE, JsonEvent.VALUE_NULL, JsonEvent.END_ARRAY, JsonEvent.KEY,
+				JsonEvent.START_OBJECT, JsonEvent.END_OBJECT, JsonEvent.END_OBJECT, JsonEvent.END_DOCUMENT };
+		for(JsonEvent e : expected)
+		{
+			assertEquals(e, reader.nextEvent());
+			if(e == JsonEvent.KEY)
+				assertTrue(reader.getString().equals("key") || reader.getString().equals("o"));
+			else if(e == JsonEvent.VALUE_NUMBER)
+				assertEquals(1.5, reader.getNumber());
+			else if(e == JsonEvent.VALUE_STRING)
+				assertEquals("s", reader.getString());
+		}
+		assertEquals(JsonEvent.END_DOCUMENT, reader.nextEvent());
+
+		EventReader error = parser.newEventReader(this.getClass().getResourceAsStream("error_close_array.json"));
+		assertThrows(ParseException.class, () -> {
+			while(error.nextEvent() != JsonEvent.END_DOCUMENT)
+				;
+		}, "Expected ',' or ']'");
+	}
+
+	@Test
+	void pushEvents() throws ParseException, IOException
+	{
+		StringBuilder events = new StringBuilder();
+		parser.readJsonStream(this.getClass().getResourceAsStream("values.json"), new IJsonHandler()
+		{
+			@Override
+			public void startObject()
+			{
+				events.append("{");
+			}
+
+			@Override
+			public void endObject()
+			{
+				events.append("}");
+			}
+
+			@Override
+			public void startArray()
+			{
+				events.append("[");
+			}
+
+			@Override
+			public void endArray()
+			{
+				events.append("]");
+			}
+
+			@Override
+			public void key(String key)
+			{
+				events.append(key).append(":");
+			}
+
+			@Override
+			public void string(String value)
+			{
+				events.append(value).append(",");
+			}
+
+			@Override
+			public void number(double value)
+			{
+				events.append(value).append(",");
+			}
+
+			@Override
+			public void bool(boolean value)
+			{
+				events.append(value).append(",");
+			}
+
+			@Override
+			public void nullValue()
+			{
+				events.append("null,");
+			}
+
+			@Override
+			public void endDocument()
+			{
+				events.append("$");
+			}
+		});
+		assertEquals("{object:{array:[{key:Pouet,}{key:true,}]}}$", events.toString());
+	}
+
+	@Test
+	void jsonLines() throws ParseException, IOException
+	{
+		StringBuilder lines = new StringBuilder();
+		List<Object> expected = new ArrayList<>();
+		for(int i = 0; i < 1000; i++)
+		{
+			String line = "{\"id\":" + i + ",\"tags\":[\"t\u00e9" + i + "\"]}";
+			lines.append(line).append(i % 7 == 0 ? "\r\n\n" : "\n");
+			expected.add(parser.readJsonStream(new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8))));
+		}
+		byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+		// Petits morceaux : une ligne peut dépasser la taille d'un morceau
+		ForkJoinPool pool = new ForkJoinPool(4);
+		JsonLinesReader reader = new JsonLinesReader(pool, 20);
+		assertEquals(expected, reader.readJsonLines(new ByteArrayInputStream(bytes)));
+
+		AtomicInteger count = new AtomicInteger();
+		reader.forEachJsonLine(new ByteArrayInputStream(bytes), o -> count.incrementAndGet());
+		assertEquals(1000, count.get());
+
+		Path file = Files.createTempFile("json", ".jsonl");
+		try
+		{
+			Files.write(file, bytes);
+			assertEquals(expected, reader.readJsonLines(file));
+			double sum = reader.foldJsonLines(file, () -> new double[1], (acc, document) -> {
+				JsonEvent e;
+				while((e = document.nextEvent()) != JsonEvent.END_DOCUMENT)
+				{
+					if(e == JsonEvent.VALUE_NUMBER)
+						acc[0] += document.getNumber();
+				}
+			}, (a, b) -> new double[] { a[0] + b[0] })[0];
+			assertEquals(999 * 1000 / 2, sum);
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+
+		byte[] error = "{\"a\":1}\n{\"a\":1} {}\n".getBytes();
+		assertThrows(ParseException.class, () -> reader.readJsonLines(new ByteArrayInputStream(error)),
+				"Invalid Json stream in the line at byte 8");
+		pool.shutdown();
+	}
+
+	RegexAutomaton automaton(String regex) throws IOException, ParseException, BuilderException, AutomatonException
+	{
+		return new RegexAutomatonBuilder(new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes())))
+				.build();
+	}
+
+	@Test
+	void streamValues() throws ParseException, IOException, BuilderException, AutomatonException
+	{
+		file = "values.json";
+		ArrayList<String> paths = new ArrayList<>();
+		ArrayList<Object> values = new ArrayList<>();
+		automaton("object.array.key").matchJsonStream(this.getClass().getResourceAsStream(file), (p, v) -> {
+			paths.add(p);
+			values.add(v);
+		});
+		assertEquals(2, values.size());
+		assertEquals("object.array.key", paths.get(0));
+		assertEquals("Pouet", values.get(0));
+		assertEquals(true, values.get(1));
+	}
+
+	@Test
+	void streamNestedMatches() throws ParseException, IOException, BuilderException, AutomatonException
+	{
+		String jsonData = "{\"a\":{\"a\":1.0,\"b\":[{\"a\":2.0}],\"c\":{\"a\":[3.0]}},\"b\":{\"a\":{}}}";
+		ArrayList<String> paths = new ArrayList<>();
+		ArrayList<Object> values = new ArrayList<>();
+		automaton("a*").matchJsonStream(new ByteArrayInputStream(jsonData.getBytes()), (p, v) -> {
+			paths.add(p);
+			values.add(v);
+		});
+		// Les valeurs imbriquées sont données avant la valeur qui les contient
+		assertEquals(2, paths.size());
+		assertEquals("a.a", paths.get(0));
+		assertEquals(1.0, values.get(0));
+		assertEquals("a", paths.get(1));
+
+		LinkedHashMap<?, ?> full = (LinkedHashMap<?, ?>) parser.readJsonStream(new ByteArrayInputStream(jsonData.getBytes()));
+		assertEquals(full.get("a"), values.get(1));
+	}
+
+	@Test
+	void streamErrors() throws IOException, ParseException, BuilderException, AutomatonException
+	{
+		RegexAutomaton key = automaton("key");
+		RegexAutomaton other = automaton("other");
+		for(String f : new String[] { "error_close_array.json", "error_number.json", "error_literral.json" })
+		{
+			assertThrows(ParseException.class,
+					() -> key.matchJsonStream(this.getClass().getResourceAsStream(f), (p, v) -> fail(p)));
+			// Les erreurs sont aussi détectées dans les valeurs ignorées
+			assertThrows(ParseException.class,
+					() -> other.matchJsonStream(this.getClass().getResourceAsStream(f), (p, v) -> fail(p)));
+		}
+	}
+
+	@Test
+	void symbols() throws InterruptedException
+	{
+		SymbolTable symbols = new SymbolTable();
+		int a = symbols.intern("a");
+		assertEquals(a, symbols.intern(new StringBuilder("a")));
+		assertSame(symbols.canonical("a"), symbols.canonical(new StringBuilder("a")));
+		assertEquals("a", symbols.getKey(a));
+		assertEquals(SymbolTable.NO_SYMBOL, symbols.getSymbol("b"));
+
+		// Internement concurrent : un seul symbole par clé
+		AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(() -> {
+				for(int i = 0; i < 1000; i++)
+				{
+					if(!symbols.getKey(symbols.intern("k" + i)).equals("k" + i))
+						errors.incrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		assertEquals(0, errors.get());
+		assertEquals(1001, symbols.size());
+		for(int i = 0; i < 1000; i++)
+			assertEquals("k" + i, symbols.getKey(symbols.getSymbol("k" + i)));
+	}
+
+	@Test
+	void parseSymbols() throws ParseException, IOException
+	{
+		SymbolTable symbols = new SymbolTable();
+		JsonParser symbolParser = new JsonParser(symbols);
+		String jsonData = "[{\"name\":\"name\"},{\"name\":1}]";
+		List<?> data = (List<?>) symbolParser.readJsonStream(new ByteArrayInputStream(jsonData.getBytes()));
+		String first = (String) ((LinkedHashMap<?, ?>) data.get(0)).keySet().iterator().next();
+		String second = (String) ((LinkedHashMap<?, ?>) data.get(1)).keySet().iterator().next();
+		assertSame(first, second);
+		assertSame(symbols.canonical("name"), first);
+		// Les valeurs ne sont pas internées
+		assertNotSame(first, ((LinkedHashMap<?, ?>) data.get(0)).get("name"));
+
+		EventReader reader = symbolParser.newEventReader(new ByteArrayInputStream(jsonData.getBytes()));
+		while(reader.nextEvent() != JsonEvent.KEY)
+			assertEquals(SymbolTable.NO_SYMBOL, reader.getSymbol());
+		assertEquals(symbols.getSymbol("name"), reader.getSymbol());
+	}
+
+	@Test
+	void streamSymbols() throws ParseException, IOException, BuilderException, AutomatonException
+	{
+		SymbolTable symbols = new SymbolTable();
+		String regex = "a.(b|~c.*~)";
+		RegexAutomaton automaton = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes()))).symbols(symbols).build();
+		String jsonData = "{\"a\":{\"b\":1.0,\"cd\":2.0,\"e\":3.0},\"b\":4.0}";
+		int size = symbols.size();
+		ArrayList<String> paths = new ArrayList<>();
+		automaton.matchJsonStream(new ByteArrayInputStream(jsonData.getBytes()), (p, v) -> paths.add(p));
+		assertEquals(2, paths.size());
+		assertEquals("a.b", paths.get(0));
+		assertEquals("a.cd", paths.get(1));
+		// Les clés inconnues du document ne sont pas ajoutées à la table
+		assertEquals(size, symbols.size());
+		assertEquals(SymbolTable.NO_SYMBOL, symbols.getSymbol("cd"));
+
+		// Les mots sont comparés par symbole
+		JsonStreamMatcher matcher = new JsonStreamMatcher(automaton, (p, v) -> paths.add(p));
+		assertSame(symbols, matcher.getSymbols());
+		assertNotNull(matcher.nextState(matcher.getInitialState(), "x", symbols.getSymbol("a")));
+		assertNull(matcher.nextState(matcher.getInitialState(), "a", symbols.intern("x")));
+
+		// Un parseur d'une autre table ne transmet pas ses symboles
+		paths.clear();
+		new JsonParser(new SymbolTable()).readJsonStream(new ByteArrayInputStream(jsonData.getBytes()), matcher);
+		assertEquals(2, paths.size());
+
+		TableRegexAutomaton table = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes()))).symbols(symbols)
+						.buildTable();
+		assertSame(symbols, table.getSymbols());
+		int state = table.nextState(table.getInitialState(), symbols.getSymbol("a"), "a");
+		assertTrue(table.isFinal(table.nextState(state, symbols.getSymbol("b"), "b")));
+		assertTrue(table.run(new int[] { symbols.getSymbol("a"), TableRegexAutomaton.NO_KEY },
+				Arrays.asList("a", "cd")));
+	}
 }
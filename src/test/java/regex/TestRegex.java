@@ -3,6 +3,9 @@ package regex;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 
 import org.junit.jupiter.api.Test;
@@ -85,4 +88,21 @@ class TestRegex
 		assertThrows(ParseException.class, () -> parser.readRegexStream(new ByteArrayInputStream(regex.getBytes())),
 				"EOF while reading word");
 	}
+
+	@Test
+	void mappedFile() throws IOException, ParseException
+	{
+		regex = "a*.(b|~c+~)[2,3].\"d e\"";
+		Path file = Files.createTempFile("regex", ".txt");
+		try
+		{
+			Files.write(file, regex.getBytes());
+			assertEquals(parser.readRegexStream(new ByteArrayInputStream(regex.getBytes())).toString(),
+					parser.readRegexStream(file).toString());
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
 }
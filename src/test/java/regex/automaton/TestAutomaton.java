@@ -1,6 +1,9 @@
 package regex.automaton;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -8,18 +11,33 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import insomnia.automaton.AutomatonException;
 import insomnia.automaton.algorithm.DeterministicPValidation;
+import insomnia.automaton.algorithm.LazyDFAPValidation;
+import insomnia.automaton.edge.MatchCache;
 import insomnia.regex.RegexParser;
+import insomnia.regex.automaton.MultiRegexAutomaton;
+import insomnia.regex.automaton.MultiRegexAutomatonBuilder;
 import insomnia.regex.automaton.RegexAutomaton;
 import insomnia.regex.automaton.RegexAutomatonBuilder;
 import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
+import insomnia.regex.automaton.RegexAutomatonBuilder.MinimizationStats;
+import insomnia.regex.automaton.TableRegexAutomaton;
 import insomnia.regex.element.IElement;
 
 public class TestAutomaton
@@ -27,6 +45,10 @@ public class TestAutomaton
 	static String regex = "a*.b?.c+|(d.(e|f)[2,5]).~r*e?g+~";
 	static RegexAutomaton automaton;
 	static RegexAutomaton dautomaton;
+	static RegexAutomaton pautomaton;
+	static RegexAutomaton mautomaton;
+	static TableRegexAutomaton tautomaton;
+	static RegexAutomaton lautomaton;
 	static DeterministicPValidation<String> valid = new DeterministicPValidation<String>();
 
 	@BeforeAll
@@ -41,6 +63,10 @@ public class TestAutomaton
 			builder = new RegexAutomatonBuilder(elements);
 			automaton = builder.build();
 			dautomaton = builder.determinize().build();
+			pautomaton = new RegexAutomatonBuilder(elements).powerset().build();
+			mautomaton = new RegexAutomatonBuilder(elements).minimize().build();
+			tautomaton = new RegexAutomatonBuilder(elements).minimize().buildTable();
+			lautomaton = new RegexAutomatonBuilder(elements).buildLazy();
 		}
 		catch(IOException | ParseException | AutomatonException | BuilderException e)
 		{
@@ -64,6 +90,8 @@ public class TestAutomaton
 	{
 		assertFalse(automaton.isSynchronous());
 		assertTrue(dautomaton.isSynchronous());
+		assertTrue(pautomaton.isSynchronous());
+		assertTrue(mautomaton.isSynchronous());
 	}
 
 	@Test
@@ -71,6 +99,8 @@ public class TestAutomaton
 	{
 		assertFalse(automaton.isDeterministic());
 		assertTrue(dautomaton.isDeterministic());
+		assertTrue(pautomaton.isDeterministic());
+		assertTrue(mautomaton.isDeterministic());
 	}
 
 	@ParameterizedTest
@@ -91,6 +121,10 @@ public class TestAutomaton
 			ArrayList<String> a = array(s);
 			assertTrue(automaton.run(a));
 			assertTrue(dautomaton.run(a));
+			assertTrue(pautomaton.run(a));
+			assertTrue(mautomaton.run(a));
+			assertTrue(tautomaton.run(a));
+			assertTrue(lautomaton.run(a));
 		}
 		catch(AutomatonException e)
 		{
@@ -114,10 +148,368 @@ public class TestAutomaton
 			ArrayList<String> a = array(s);
 			assertFalse(automaton.run(a));
 			assertFalse(dautomaton.run(a));
+			assertFalse(pautomaton.run(a));
+			assertFalse(mautomaton.run(a));
+			assertFalse(tautomaton.run(a));
+			assertFalse(lautomaton.run(a));
 		}
 		catch(AutomatonException e)
 		{
 			fail("Regex Automaton Run Error : " + e.getMessage());
 		}
 	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"ab.x", //
+			"ab.y", //
+			"ab.a.z", //
+			"b.a.z"
+	})
+	void powersetOverlappingRegex(String s)
+	{
+		try
+		{
+			IElement elements = new RegexParser()
+					.readRegexStream(new ByteArrayInputStream("~a.*~.x|~.*b~.y|(a|b|~.b~)*.z".getBytes()));
+			RegexAutomaton p = new RegexAutomatonBuilder(elements).powerset().build();
+			assertTrue(p.isDeterministic());
+			assertTrue(p.run(array(s)));
+			assertFalse(p.run(array(s + ".x")));
+
+			TableRegexAutomaton t = new RegexAutomatonBuilder(elements).buildTable();
+			assertTrue(t.run(array(s)));
+			assertFalse(t.run(array(s + ".x")));
+			// "ab" valide les trois regex de l'état initial, "b" est un label
+			assertEquals(s.startsWith("ab") ? 1 : 0, t.getCombinedStatesCount());
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"abc.b", //
+			"abc.d", //
+			"l.l", //
+			"abcdefghijkl.k", //
+			"xyz.x", //
+			"cab.a.a"
+	})
+	void powersetManyOverlappingRegex(String s)
+	{
+		try
+		{
+			// 12 regex pouvant toutes valider une même clé
+			StringBuilder regex = new StringBuilder();
+			for(char c = 'a'; c <= 'l'; c++)
+				regex.append(c == 'a' ? "" : "|").append("~.*").append(c).append(".*~.").append(c);
+			IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream(regex.toString().getBytes()));
+
+			RegexAutomaton nfa = new RegexAutomatonBuilder(elements).build();
+			RegexAutomatonBuilder builder = new RegexAutomatonBuilder(elements).minimize();
+			assertTrue(builder.getStatesCount() <= 14);
+
+			TableRegexAutomaton t = builder.buildTable();
+			assertEquals(nfa.run(array(s)), t.run(array(s)));
+			RegexAutomaton m = new RegexAutomatonBuilder(elements).minimize().build();
+			assertTrue(m.isDeterministic());
+			assertEquals(nfa.run(array(s)), m.run(array(s)));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void minimize()
+	{
+		try
+		{
+			IElement elements = new RegexParser()
+					.readRegexStream(new ByteArrayInputStream("a.b[2,4]|c.b[2,4]|d".getBytes()));
+			RegexAutomatonBuilder builder = new RegexAutomatonBuilder(elements).minimize();
+			MinimizationStats stats = builder.getMinimizationStats();
+			assertEquals(10, stats.getDeterminizedStates());
+			assertEquals(6, stats.getMinimizedStates());
+
+			RegexAutomaton m = builder.build();
+			assertTrue(m.run(array("a.b.b")));
+			assertTrue(m.run(array("c.b.b.b.b")));
+			assertTrue(m.run(array("d")));
+			assertFalse(m.run(array("d.b.b")));
+			assertFalse(m.run(array("c.b.b.b.b.b")));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void concurrentRun() throws InterruptedException, ExecutionException
+	{
+		ArrayList<String> matching = array("d.e.f.e.e.f.reg");
+		ArrayList<String> notMatching = array("d.f.f.re");
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for(int i = 0; i < 2000; i++)
+		{
+			results.add(pool.submit(() -> automaton.run(matching) && !automaton.run(notMatching) //
+					&& pautomaton.run(matching) && !pautomaton.run(notMatching) //
+					&& lautomaton.run(matching) && !lautomaton.run(notMatching)));
+		}
+		for(Future<Boolean> result : results)
+			assertTrue(result.get());
+		pool.shutdown();
+	}
+
+	@Test
+	void bitSetValidation()
+	{
+		try
+		{
+			RegexParser parser = new RegexParser();
+			RegexAutomaton star = new RegexAutomatonBuilder(parser.readRegexStream(new ByteArrayInputStream("a*".getBytes())))
+					.build();
+			RegexAutomaton key = new RegexAutomatonBuilder(parser.readRegexStream(new ByteArrayInputStream("a".getBytes())))
+					.build();
+			assertTrue(star.run(new ArrayList<String>()));
+			assertFalse(key.run(new ArrayList<String>()));
+
+			// Plus de 64 états
+			RegexAutomaton large = new RegexAutomatonBuilder(
+					parser.readRegexStream(new ByteArrayInputStream("(a|b)[1,40].c".getBytes()))).build();
+			assertFalse(large.isDeterministic());
+			assertTrue(large.run(array("a.b.a.c")));
+			assertTrue(large.run(array(String.join(".", Collections.nCopies(40, "b")) + ".c")));
+			assertFalse(large.run(array(String.join(".", Collections.nCopies(41, "b")) + ".c")));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void lazyDFAThrashing()
+	{
+		try
+		{
+			IElement elements = new RegexParser()
+					.readRegexStream(new ByteArrayInputStream("(a|b)*.a.(a|b).(a|b).(a|b)".getBytes()));
+			RegexAutomaton lazy = new RegexAutomatonBuilder(elements).buildLazy(2, 4);
+			LazyDFAPValidation<String> validation = (LazyDFAPValidation<String>) lazy.getValidator();
+			for(int i = 0; i < 10; i++)
+			{
+				assertTrue(lazy.run(array("b.b.a.b.a.a")));
+				assertTrue(lazy.run(array("a.a.a.a")));
+				assertFalse(lazy.run(array("a.b.b.b.b")));
+				assertFalse(lazy.run(array("b.c.a.b.a.a")));
+			}
+			assertTrue(validation.getFlushCount() > 0);
+			assertTrue(validation.isFallback());
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"a.b.c", //
+			"d.e.f.e.e.f.reg", //
+			"a.a", //
+			"b.x", //
+			"x", //
+			"a.b.b.c"
+	})
+	void multiPattern(String s)
+	{
+		String[] regexs = { regex, "a*", "~[ab]~.x|a.a", "a.b.c", "(a|b|~x~)*", "d" };
+		try
+		{
+			MultiRegexAutomatonBuilder builder = new MultiRegexAutomatonBuilder();
+			List<Integer> expected = new ArrayList<>();
+			for(String r : regexs)
+			{
+				IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream(r.getBytes()));
+				int id = builder.addPattern(elements);
+				if(new RegexAutomatonBuilder(elements).build().run(array(s)))
+					expected.add(id);
+			}
+			MultiRegexAutomaton multi = builder.build();
+			assertArrayEquals(expected.stream().mapToInt(i -> i).toArray(), multi.match(array(s)));
+			assertEquals(!expected.isEmpty(), multi.run(array(s)));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void multiPatternManyRegex()
+	{
+		List<String> regexs = new ArrayList<>();
+		for(int i = 0; i < 500; i++)
+			regexs.add("~user" + i + "_[0-9]+~.x");
+		regexs.add("~user.*~.x");
+		regexs.add("~.*_7~.(x|y)");
+		String[] paths = { "user42_7.x", "user42_7.y", "user499_123.x", "user500_1.x", "user4_.x", "admin_7.y", "user42_7" };
+		try
+		{
+			MultiRegexAutomatonBuilder builder = new MultiRegexAutomatonBuilder();
+			List<RegexAutomaton> automata = new ArrayList<>();
+			for(String r : regexs)
+			{
+				IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream(r.getBytes()));
+				builder.addPattern(elements);
+				automata.add(new RegexAutomatonBuilder(elements).build());
+			}
+			MultiRegexAutomaton multi = builder.build();
+			for(String path : paths)
+			{
+				List<Integer> expected = new ArrayList<>();
+				for(int id = 0; id < automata.size(); id++)
+				{
+					if(automata.get(id).run(array(path)))
+						expected.add(id);
+				}
+				assertArrayEquals(expected.stream().mapToInt(i -> i).toArray(), multi.match(array(path)), path);
+			}
+			assertArrayEquals(new int[] { 42, 500, 501 }, multi.match(array("user42_7.x")));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	static RegexAutomaton determinized(String r)
+			throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		return new RegexAutomatonBuilder(new RegexParser().readRegexStream(new ByteArrayInputStream(r.getBytes())))
+				.determinize().build();
+	}
+
+	@Test
+	void cacheMatches()
+	{
+		try
+		{
+			RegexAutomaton automaton = new RegexAutomatonBuilder(
+					new RegexParser().readRegexStream(new ByteArrayInputStream("a.~[a-z]+_id~.b".getBytes())))
+							.determinize().cacheMatches(16).build();
+			for(int i = 0; i < 10; i++)
+			{
+				assertTrue(automaton.run(Arrays.asList("a", "user_id", "b")));
+				assertFalse(automaton.run(Arrays.asList("a", "User_id", "b")));
+			}
+			List<MatchCache> caches = automaton.getMatchCaches();
+			assertEquals(1, caches.size());
+			assertEquals(2, caches.get(0).getMisses());
+			assertEquals(18, caches.get(0).getHits());
+			assertEquals(0.9, caches.get(0).getHitRate(), 1e-9);
+
+			assertTrue(determinized("a.~[a-z]+_id~.b").getMatchCaches().isEmpty());
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void generatePaths()
+	{
+		try
+		{
+			RegexAutomaton paths = determinized("a.(b|c.d)[1,2].e?");
+			List<String> all = paths.generatePaths();
+			assertEquals(Arrays.asList("a.b", "a.b.e", "a.b.b", "a.b.b.e"), all.subList(0, 4));
+			assertEquals(12, all.size());
+			assertEquals(all.subList(0, 3), paths.generatePaths(3));
+			assertEquals(all.subList(0, 5), paths.paths().limit(5).collect(Collectors.toList()));
+
+			RegexAutomaton summary = determinized("a.(b|x).e");
+			assertEquals(Arrays.asList("a.b", "a.b.e"), paths.getPathsFromAutomaton(summary));
+			assertEquals(0, paths.getPathsFromAutomaton(summary, 0).size());
+			assertEquals(2, paths.streamPathsFromAutomaton(summary).count());
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "a.b*", "a.(b.c)+.d", "~a~.b" })
+	void generatePathsNot(String r)
+	{
+		try
+		{
+			RegexAutomaton notFinite = determinized(r);
+			assertThrows(AutomatonException.class, () -> notFinite.generatePaths());
+			assertThrows(AutomatonException.class, () -> notFinite.pathsIterator());
+			assertThrows(AutomatonException.class, () -> determinized("a.b").getPathsFromAutomaton(notFinite));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"(x*.b)?, x, b", //
+			"(x*.b)*, x, x.b.b", //
+			"'a[2,2]', a.a.a, a.a", //
+			"'(x*.b)[1,2]', b.x, x.x.b.b", //
+			"'a.(b.a)[0,2]', a.b, a.b.a.b.a"
+	})
+	void quantifiers(String r, String rejected, String accepted)
+	{
+		try
+		{
+			IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream(r.getBytes()));
+			RegexAutomaton automaton = new RegexAutomatonBuilder(elements).build();
+			RegexAutomaton d = new RegexAutomatonBuilder(elements).determinize().build();
+			RegexAutomaton m = new RegexAutomatonBuilder(elements).minimize().build();
+			for(RegexAutomaton a : Arrays.asList(automaton, d, m))
+			{
+				assertFalse(a.run(array(rejected)));
+				assertTrue(a.run(array(accepted)));
+			}
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void largeQuantifier()
+	{
+		try
+		{
+			IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream("(a|b)[1,2000]".getBytes()));
+			RegexAutomatonBuilder builder = new RegexAutomatonBuilder(elements).minimize();
+			assertEquals(2001, builder.getStatesCount());
+
+			RegexAutomaton m = builder.build();
+			String path = String.join(".", Collections.nCopies(2000, "a"));
+			assertTrue(m.run(array(path)));
+			assertTrue(m.run(array("b.a.b")));
+			assertFalse(m.run(array(path + ".b")));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
 }
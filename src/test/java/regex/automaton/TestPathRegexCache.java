@@ -0,0 +1,108 @@
+package regex.automaton;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.regex.automaton.PathRegexCache;
+import insomnia.regex.automaton.PathRegexCache.Eviction;
+import insomnia.regex.automaton.RegexAutomaton;
+import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
+
+class TestPathRegexCache
+{
+	@Test
+	void hitsAndMisses() throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		PathRegexCache cache = new PathRegexCache();
+		RegexAutomaton automaton = cache.get("a.(b|~c+~)*");
+		assertSame(automaton, cache.get("  a.(b|~c+~)*\n"));
+		assertTrue(automaton.run(Arrays.asList("a", "b", "ccc")));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+
+		assertThrows(ParseException.class, () -> cache.get("a..b"));
+		assertThrows(ParseException.class, () -> cache.get("a..b"));
+		assertEquals(1, cache.size());
+	}
+
+	@ParameterizedTest
+	@EnumSource(Eviction.class)
+	void eviction(Eviction eviction) throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		PathRegexCache cache = new PathRegexCache(2, eviction, false);
+		RegexAutomaton a = cache.get("a");
+		cache.get("a");
+		cache.get("a");
+		RegexAutomaton b = cache.get("b");
+		cache.get("a");
+		cache.get("b");
+		cache.get("c");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// LRU : a est la moins récente, LFU : b est la moins utilisée
+		if(eviction == Eviction.LRU)
+		{
+			assertSame(b, cache.get("b"));
+			assertNotSame(a, cache.get("a"));
+		}
+		else
+		{
+			assertSame(a, cache.get("a"));
+			assertNotSame(b, cache.get("b"));
+		}
+	}
+
+	@Test
+	void weakValues() throws IOException, ParseException, AutomatonException, BuilderException
+	{
+		PathRegexCache cache = new PathRegexCache(16, Eviction.LRU, true);
+		RegexAutomaton automaton = cache.get("a.b");
+		assertSame(automaton, cache.get("a.b"));
+		assertFalse(cache.toString().isEmpty());
+	}
+
+	@Test
+	void singleFlight() throws InterruptedException, ExecutionException
+	{
+		PathRegexCache cache = new PathRegexCache();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<RegexAutomaton>> futures = new ArrayList<>();
+		for(int i = 0; i < 8; i++)
+		{
+			futures.add(executor.submit(() -> {
+				start.await();
+				return cache.get("(a|b|~c[0-9]+~)[2,30].d*.e");
+			}));
+		}
+		start.countDown();
+		RegexAutomaton automaton = futures.get(0).get();
+		for(Future<RegexAutomaton> future : futures)
+			assertSame(automaton, future.get());
+		executor.shutdown();
+
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getHits());
+	}
+}
@@ -8,15 +8,19 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import insomnia.automaton.AutomatonException;
+import insomnia.automaton.IAutomaton;
 import insomnia.regex.RegexParser;
 import insomnia.regex.automaton.RegexAutomatonBuilder.BuilderException;
 import insomnia.regex.automaton.VMRegexAutomaton;
+import insomnia.regex.automaton.VMRegexAutomaton.Execution;
 import insomnia.regex.automaton.VMRegexAutomatonBuilder;
 import insomnia.regex.element.IElement;
 
@@ -25,6 +29,8 @@ class TestVMAutomaton
 	static String regex = "a*.b?.c+|(d.(e|f)[2,5]).~r*e?g+~";
 
 	static VMRegexAutomaton automaton;
+	static VMRegexAutomaton pikeAutomaton;
+	static IAutomaton<String> compiledAutomaton;
 	
 	@BeforeAll
 	static void init()
@@ -37,8 +43,10 @@ class TestVMAutomaton
 			elements = parser.readRegexStream(new ByteArrayInputStream(regex.getBytes()));
 			builder = new VMRegexAutomatonBuilder(elements);
 			automaton = builder.build();
+			pikeAutomaton = builder.build(Execution.PIKE_VM);
+			compiledAutomaton = builder.buildCompiled();
 		}
-		catch(IOException | ParseException | BuilderException e)
+		catch(IOException | ParseException | BuilderException | AutomatonException e)
 		{
 			fail(e.getMessage());
 		}
@@ -72,6 +80,8 @@ class TestVMAutomaton
 		try
 		{
 			assertTrue(automaton.run(a));
+			assertTrue(pikeAutomaton.run(a));
+			assertTrue(compiledAutomaton.run(a));
 		}
 		catch(AutomatonException e)
 		{
@@ -94,10 +104,52 @@ class TestVMAutomaton
 		try
 		{
 			assertFalse(automaton.run(a));
+			assertFalse(pikeAutomaton.run(a));
+			assertFalse(compiledAutomaton.run(a));
 		}
 		catch(AutomatonException e)
 		{
 			fail("Regex Automaton Run Error : " + e.getMessage());
 		}
 	}
+
+	@Test
+	void pikeNestedQuantifiers()
+	{
+		try
+		{
+			IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream("(a*)*.b".getBytes()));
+			VMRegexAutomaton pike = new VMRegexAutomatonBuilder(elements).build(Execution.PIKE_VM);
+			ArrayList<String> a = array(String.join(".", Collections.nCopies(100000, "a")));
+			assertFalse(pike.run(a));
+			a.add("b");
+			assertTrue(pike.run(a));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	void compiledLargeProgram()
+	{
+		try
+		{
+			// Plus de 64 instructions : plusieurs mots par ensemble de threads
+			IElement elements = new RegexParser().readRegexStream(new ByteArrayInputStream("(a|~b+~)[1,40].c".getBytes()));
+			IAutomaton<String> compiled = new VMRegexAutomatonBuilder(elements).buildCompiled();
+			ArrayList<String> a = array(String.join(".", Collections.nCopies(39, "bb")));
+			assertFalse(compiled.run(a));
+			a.add("a");
+			a.add("c");
+			assertTrue(compiled.run(a));
+			a.add(0, "a");
+			assertFalse(compiled.run(a));
+		}
+		catch(IOException | ParseException | AutomatonException | BuilderException e)
+		{
+			fail(e.getMessage());
+		}
+	}
 }
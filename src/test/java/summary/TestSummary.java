@@ -0,0 +1,364 @@
+package summary;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import insomnia.automaton.AutomatonException;
+import insomnia.json.JsonLinesReader;
+import insomnia.json.JsonParser;
+import insomnia.regex.RegexParser;
+import insomnia.regex.automaton.RegexAutomaton;
+import insomnia.regex.automaton.RegexAutomatonBuilder;
+import insomnia.summary.BinarySummary;
+import insomnia.summary.BinarySummaryFactory;
+import insomnia.summary.IIndexedSummary;
+import insomnia.summary.ISummary;
+import insomnia.summary.Summary;
+import insomnia.summary.Summary.Builder.BuilderException;
+import insomnia.summary.Summary.Builder.RootType;
+import insomnia.summary.SummaryFactory;
+import insomnia.summary.TrieSummary;
+import insomnia.symbol.SymbolTable;
+
+class TestSummary
+{
+	JsonParser parser = new JsonParser();
+	SummaryFactory factory = new SummaryFactory();
+
+	Object json(String s) throws ParseException, IOException
+	{
+		return parser.readJsonStream(stream(s));
+	}
+
+	ByteArrayInputStream stream(String s)
+	{
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { //
+			"{}", //
+			"{\"a\":1,\"b\":\"x\",\"c\":null}", //
+			"{\"a\":{\"b\":{\"c\":true}},\"d\":[]}", //
+			"{\"a\":[{\"b\":1},{\"c\":2},3,[{\"d\":4}]]}", //
+			"{\"a\":[[[]],{\"b\":[{\"c\":{}}]}],\"e\":{\"f\":[1,2]}}" //
+	})
+	void streamEqualsTree(String document) throws ParseException, IOException, BuilderException
+	{
+		Summary fromTree = factory.generate(Arrays.asList(json(document)));
+		Summary fromStream = factory.generate(stream(document));
+		assertEquals(fromTree.getData(), fromStream.getData());
+	}
+
+	@Test
+	void foldDocuments() throws ParseException, IOException, BuilderException
+	{
+		Summary summary = factory.generate(Arrays.asList(json("{\"a\":1,\"b\":[{\"c\":1}]}"),
+				json("{\"a\":{\"d\":1},\"b\":[{\"e\":1}]}")));
+		assertEquals(json("{\"a\":{\"d\":null},\"b\":[{\"c\":null,\"e\":null}]}"), summary.getData());
+	}
+
+	@Test
+	void symbols() throws ParseException, IOException, BuilderException
+	{
+		SymbolTable symbols = new SymbolTable();
+		SummaryFactory symbolFactory = new SummaryFactory(RootType.OBJECT, symbols);
+		Summary fromStream = symbolFactory.generate(stream("{\"a\":{\"b\":1},\"c\":[{\"b\":2}]}"));
+		Summary fromTree = symbolFactory.generate(Arrays.asList(json("{\"b\":{\"a\":1}}")));
+		assertEquals(factory.generate(stream("{\"a\":{\"b\":1},\"c\":[{\"b\":2}]}")).getData(), fromStream.getData());
+
+		Map<?, ?> root = (Map<?, ?>) fromStream.getData();
+		Map<?, ?> a = (Map<?, ?>) root.get("a");
+		Map<?, ?> c = (Map<?, ?>) ((List<?>) root.get("c")).get(0);
+		assertSame(a.keySet().iterator().next(), c.keySet().iterator().next());
+		// Les clés d'un arbre sont aussi internées
+		Map<?, ?> b = (Map<?, ?>) ((Map<?, ?>) fromTree.getData()).get("b");
+		assertSame(root.keySet().stream().filter("a"::equals).findFirst().get(), b.keySet().iterator().next());
+		assertEquals(3, symbols.size());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { //
+			"{\"a\":{}}\n{\"a\":[]}", //
+			"{\"a\":[{\"b\":[]}]}\n{\"a\":[{\"b\":{}}]}", //
+			"{\"a\":1}\n[{\"a\":1}]" //
+	})
+	void inconsistent(String lines)
+	{
+		List<Object> documents = new ArrayList<>();
+		for(String line : lines.split("\n"))
+			assertDoesNotThrow(() -> documents.add(json(line)));
+		assertThrows(IllegalArgumentException.class, () -> factory.generate(documents));
+		assertThrows(ParseException.class, () -> factory.generateFromJsonLines(stream(lines), new JsonLinesReader()));
+	}
+
+	@Test
+	void jsonLines() throws ParseException, IOException, BuilderException
+	{
+		StringBuilder lines = new StringBuilder();
+		List<Object> documents = new ArrayList<>();
+		for(int i = 0; i < 500; i++)
+		{
+			String line = "{\"id\":" + i + ",\"k" + (i % 13) + "\":{\"v\":[{\"w" + (i % 5) + "\":" + i + "}]}}";
+			lines.append(line).append("\n");
+			documents.add(json(line));
+		}
+
+		// Petits morceaux : les résumés partiels sont fusionnés
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			JsonLinesReader reader = new JsonLinesReader(pool, 64);
+			Summary summary = factory.generateFromJsonLines(stream(lines.toString()), reader);
+			assertEquals(factory.generate(documents).getData(), summary.getData());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void merge() throws ParseException, IOException, BuilderException
+	{
+		Summary a = factory.generate(stream("{\"a\":{\"b\":1},\"c\":[]}"));
+		Summary b = factory.generate(stream("{\"a\":{\"d\":1},\"c\":[{\"e\":1}]}"));
+		Object before = json("{\"a\":{\"b\":null},\"c\":[]}");
+
+		Summary merged = factory.merge(a, b);
+		assertEquals(json("{\"a\":{\"b\":null,\"d\":null},\"c\":[{\"e\":null}]}"), merged.getData());
+		assertEquals(before, a.getData());
+
+		Summary c = factory.generate(stream("{\"c\":{}}"));
+		assertThrows(BuilderException.class, () -> factory.merge(a, c));
+	}
+
+	@Test
+	void saveLoad() throws ParseException, IOException, BuilderException
+	{
+		Summary summary = factory.generate(stream("{\"a\":{\"b\":[{\"c\":1}]},\"d\":2}"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		factory.save(out, summary);
+		ISummary loaded = factory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(summary.getData(), loaded.getData());
+
+		assertThrows(IllegalArgumentException.class, () -> factory.load(stream("{\"a\":[1]}")));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { //
+			"{}", //
+			"[]", //
+			"[{\"a\":1}]", //
+			"{\"a\":1,\"b\":{\"c\":[{\"d\":{\"\u00e9t\u00e9\":2}}]},\"e\":[]}", //
+			"{\"z\":{\"y\":1,\"x\":1,\"w\":{\"v\":1}},\"a\":[{\"z\":1,\"a\":[[{\"b\":1}]]}]}" //
+	})
+	void binary(String document) throws ParseException, IOException, BuilderException
+	{
+		Object tree = json(document);
+		Summary summary = new SummaryFactory(tree instanceof List ? RootType.ARRAY : RootType.OBJECT)
+				.generate(Arrays.asList(tree));
+		BinarySummaryFactory binaryFactory = new BinarySummaryFactory();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		binaryFactory.save(out, summary);
+		BinarySummary loaded = binaryFactory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(summary.getData(), loaded.getData());
+		assertEquals(loaded.getData(), summary.getData());
+		assertEquals(summary.getData().hashCode(), loaded.getData().hashCode());
+
+		Path file = Files.createTempFile("summary", ".bin");
+		try
+		{
+			binaryFactory.save(file, summary);
+			loaded = binaryFactory.load(file);
+			assertEquals(summary.getData(), loaded.getData());
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void binaryViews() throws ParseException, IOException, BuilderException
+	{
+		Summary summary = factory.generate(stream("{\"b\":1,\"a\":{\"c\":[{\"d\":1}]},\"e\":[]}"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinarySummaryFactory().save(out, summary);
+		Map<String, Object> root = (Map<String, Object>) new BinarySummaryFactory()
+				.load(new ByteArrayInputStream(out.toByteArray())).getData();
+
+		assertTrue(root.containsKey("b"));
+		assertNull(root.get("b"));
+		assertFalse(root.containsKey("c"));
+		assertEquals(3, root.size());
+		List<Object> c = (List<Object>) ((Map<String, Object>) root.get("a")).get("c");
+		assertEquals(1, c.size());
+		assertTrue(((Map<String, Object>) c.get(0)).containsKey("d"));
+		assertTrue(((List<Object>) root.get("e")).isEmpty());
+		assertThrows(UnsupportedOperationException.class, () -> root.put("f", null));
+
+		assertThrows(UncheckedIOException.class,
+				() -> new BinarySummaryFactory().load(stream("{\"a\":null}")));
+	}
+
+	static final String DOCUMENTS = "{\"a\":{\"b\":1,\"c\":[{\"d\":1,\"a\":{\"b\":[]}}]},\"e\":[[]],\"b\":{}}\n"
+			+ "{\"a\":{\"x\":{\"y\":{\"z\":1}}},\"f\":[{\"g\":[{\"h\":1}]}],\"\u00e9\":1}";
+
+	@Test
+	void trie() throws ParseException, IOException
+	{
+		Summary summary = factory.generateFromJsonLines(stream(DOCUMENTS), new JsonLinesReader());
+		TrieSummary trie = new TrieSummary(summary);
+		assertEquals(summary.getData(), trie.getData());
+
+		int root = trie.getRoot();
+		int a = trie.getChild(root, trie.indexOfChild(root, trie.getKeyId("a")));
+		int c = trie.getChild(a, trie.indexOfChild(a, trie.getKeyId("c")));
+		assertTrue(trie.isArray(c));
+		assertFalse(trie.isArray(a));
+		assertEquals(2, trie.getChildrenCount(c));
+		assertEquals(IIndexedSummary.NO_NODE, trie.getChild(a, trie.indexOfChild(a, trie.getKeyId("b"))));
+		assertEquals(-1, trie.indexOfChild(root, trie.getKeyId("d")));
+		assertEquals(IIndexedSummary.NO_KEY, trie.getKeyId("w"));
+
+		assertNull(new TrieSummary(() -> null).getData());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "a.b", "a.c.d", "a.~.*~.b", "a.c.a.b", "~.*~.b", "~.~*", "a.x*.y?.z", "f.g.h", "~[^a]~", "b|e" })
+	void pathsFromIndexedSummary(String regex)
+			throws ParseException, IOException, RegexAutomatonBuilder.BuilderException, AutomatonException
+	{
+		Summary summary = factory.generateFromJsonLines(stream(DOCUMENTS), new JsonLinesReader());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinarySummaryFactory().save(out, summary);
+		RegexAutomaton automaton = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes()))).build();
+
+		HashSet<String> expected = new HashSet<>(automaton.getPathsFromSummary(summary));
+		assertEquals(expected, new HashSet<>(automaton.getPathsFromSummary(new TrieSummary(summary))));
+		assertEquals(expected, new HashSet<>(automaton.getPathsFromSummary(
+				new BinarySummaryFactory().load(new ByteArrayInputStream(out.toByteArray())))));
+	}
+
+	@Test
+	void sharedIntersection()
+			throws ParseException, IOException, BuilderException, RegexAutomatonBuilder.BuilderException, AutomatonException
+	{
+		Summary first = factory.generateFromJsonLines(stream(DOCUMENTS), new JsonLinesReader());
+		Summary second = factory.generate(stream("{\"q\":{\"b\":1,\"r\":{\"b\":[]}},\"b\":1}"));
+		RegexAutomaton automaton = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream("~.*~*.b".getBytes()))).build();
+
+		// Le produit est partagé entre les requêtes sur des résumés différents
+		HashSet<String> expected = new HashSet<>(Arrays.asList("a.b", "a.c.a.b", "b"));
+		assertEquals(expected, new HashSet<>(automaton.getPathsFromSummary(first)));
+		assertEquals(new HashSet<>(Arrays.asList("q.b", "q.r.b", "b")),
+				new HashSet<>(automaton.getPathsFromSummary(new TrieSummary(second))));
+		assertEquals(expected, new HashSet<>(automaton.getPathsFromSummary(new TrieSummary(first))));
+	}
+
+	@SuppressWarnings("unchecked")
+	void allPaths(Object data, List<String> path, List<List<String>> paths)
+	{
+		if(data instanceof Map)
+		{
+			for(Map.Entry<String, Object> entry : ((Map<String, Object>) data).entrySet())
+			{
+				List<String> p = new ArrayList<>(path);
+				p.add(entry.getKey());
+				paths.add(p);
+				allPaths(entry.getValue(), p, paths);
+			}
+		}
+		else if(data instanceof List)
+		{
+			for(Object elt : (List<Object>) data)
+				allPaths(elt, path, paths);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "a.c|a.c.d", "(a|a.c).d", "~.*~.b", "a.~.*~|a.c.d", "(a.x|a).y?.z", "~a|b~.~.*~*" })
+	void pathsFromSummary(String regex)
+			throws ParseException, IOException, RegexAutomatonBuilder.BuilderException, AutomatonException
+	{
+		Summary summary = factory.generateFromJsonLines(stream(DOCUMENTS), new JsonLinesReader());
+		RegexAutomaton automaton = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream(regex.getBytes()))).build();
+
+		List<List<String>> paths = new ArrayList<>();
+		allPaths(summary.getData(), new ArrayList<>(), paths);
+		HashSet<String> expected = new HashSet<>();
+		for(List<String> path : paths)
+		{
+			if(automaton.run(path))
+				expected.add(String.join(".", path));
+		}
+
+		List<String> found = automaton.getPathsFromSummary(summary);
+		assertEquals(expected.size(), found.size());
+		assertEquals(expected, new HashSet<>(found));
+		assertEquals(!expected.isEmpty(), automaton.existPath(new TrieSummary(summary)));
+
+		// Seuil minimal : chaque noeud est découpé entre plusieurs tâches
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			assertEquals(expected, automaton.getPathsFromSummary(summary, pool, 1));
+			assertEquals(expected, automaton.getPathsFromSummary(new TrieSummary(summary), pool, 2));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelWideSummary()
+			throws ParseException, IOException, BuilderException, RegexAutomatonBuilder.BuilderException, AutomatonException
+	{
+		StringBuilder document = new StringBuilder("{");
+		for(int i = 0; i < 3000; i++)
+			document.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":{\"v\":[{\"w").append(i % 7)
+					.append("\":1}]}");
+		document.append("}");
+		Summary summary = factory.generate(stream(document.toString()));
+		RegexAutomaton automaton = new RegexAutomatonBuilder(
+				new RegexParser().readRegexStream(new ByteArrayInputStream("~k1.*~.v.~w3~".getBytes()))).build();
+
+		HashSet<String> expected = new HashSet<>(automaton.getPathsFromSummary(summary));
+		assertEquals(160, expected.size());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			assertEquals(expected, automaton.getPathsFromSummary(summary, pool));
+			assertEquals(expected, automaton.getPathsFromSummary(new TrieSummary(summary), pool));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+}